@@ -14,8 +14,9 @@ import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 import org.zemo.omninet.security.model.User;
+import org.zemo.omninet.security.model.VerifiedClaims;
 import org.zemo.omninet.security.service.JwtService;
-import org.zemo.omninet.security.service.UserService;
+import org.zemo.omninet.security.service.PrincipalResolver;
 
 import java.util.List;
 import java.util.Optional;
@@ -26,7 +27,7 @@ import java.util.Optional;
 public class AuthChannelInterceptor implements ChannelInterceptor {
 
     private final JwtService jwtService;
-    private final UserService userService;
+    private final PrincipalResolver principalResolver;
 
     @Override
     public Message<?> preSend(@NotNull Message<?> message, @NotNull MessageChannel channel) {
@@ -39,9 +40,10 @@ public class AuthChannelInterceptor implements ChannelInterceptor {
                 String jwt = authHeader.substring(7);
 
                 try {
-                    if (jwtService.isTokenValid(jwt) && jwtService.isAccessToken(jwt)) {
-                        String userId = jwtService.getUserIdFromToken(jwt);
-                        Optional<User> userOpt = userService.getUserById(userId);
+                    Optional<VerifiedClaims> verified = jwtService.verifyAccessToken(jwt);
+                    if (verified.isPresent()) {
+                        String userId = verified.get().userId();
+                        Optional<User> userOpt = principalResolver.resolve(verified.get());
 
                         if (userOpt.isPresent()) {
                             User user = userOpt.get();
@@ -53,7 +55,7 @@ public class AuthChannelInterceptor implements ChannelInterceptor {
                             accessor.setUser(authToken);
                             log.info("User {} authenticated for WebSocket session.", user.getEmail());
                         } else {
-                            log.warn("User not found for JWT token in WebSocket connect frame: {}", userId);
+                            log.warn("User not found or token revoked in WebSocket connect frame: {}", userId);
                             // You might want to throw an exception here to reject the connection
                         }
                     } else {
@@ -0,0 +1,129 @@
+package org.zemo.omninet.chat.config;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.messaging.SessionConnectEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Negotiates compact CBOR payloads for clients on the native (non-SockJS) endpoint.
+ * A client opts in by sending {@code payload-format: cbor} on its CONNECT frame; outbound
+ * JSON payloads for that session are then re-encoded as CBOR and sent as binary frames.
+ * Inbound frames with {@code content-type: application/cbor} are decoded by {@link #cborMessageConverter()}.
+ */
+@Component
+@Slf4j
+public class BinaryPayloadNegotiator implements ChannelInterceptor {
+
+    public static final String NATIVE_TRANSPORT_ATTR = "nativeTransport";
+    public static final String PAYLOAD_FORMAT_HEADER = "payload-format";
+    public static final String CBOR_FORMAT = "cbor";
+    public static final MimeType APPLICATION_CBOR = new MimeType("application", "cbor");
+
+    private final ObjectMapper jsonMapper;
+    private final CBORMapper cborMapper = new CBORMapper();
+
+    private final Set<String> cborSessions = ConcurrentHashMap.newKeySet();
+
+    private final DistributionSummary jsonBytes;
+    private final DistributionSummary cborBytes;
+    private final Timer encodeTimer;
+
+    public BinaryPayloadNegotiator(ObjectMapper jsonMapper, MeterRegistry meterRegistry) {
+        this.jsonMapper = jsonMapper;
+        this.cborMapper.findAndRegisterModules();
+        this.jsonBytes = DistributionSummary.builder("chat.outbound.payload.bytes")
+                .tag("format", "json").baseUnit("bytes").register(meterRegistry);
+        this.cborBytes = DistributionSummary.builder("chat.outbound.payload.bytes")
+                .tag("format", CBOR_FORMAT).baseUnit("bytes").register(meterRegistry);
+        this.encodeTimer = Timer.builder("chat.outbound.cbor.encode").register(meterRegistry);
+    }
+
+    public MappingJackson2MessageConverter cborMessageConverter() {
+        MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter(APPLICATION_CBOR);
+        converter.setObjectMapper(cborMapper);
+        converter.setSerializedPayloadClass(byte[].class);
+        return converter;
+    }
+
+    @EventListener
+    public void onConnect(SessionConnectEvent e) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(e.getMessage());
+        Map<String, Object> attributes = accessor.getSessionAttributes();
+        boolean nativeTransport = attributes != null && Boolean.TRUE.equals(attributes.get(NATIVE_TRANSPORT_ATTR));
+
+        if (nativeTransport && CBOR_FORMAT.equalsIgnoreCase(accessor.getFirstNativeHeader(PAYLOAD_FORMAT_HEADER))) {
+            cborSessions.add(accessor.getSessionId());
+            log.debug("Session {} negotiated CBOR payloads", accessor.getSessionId());
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent e) {
+        cborSessions.remove(e.getSessionId());
+    }
+
+    public boolean isCborSession(String sessionId) {
+        return sessionId != null && cborSessions.contains(sessionId);
+    }
+
+    // Decodes an outbound payload that may already have been re-encoded for the session
+    public <T> T readPayload(String sessionId, byte[] payload, Class<T> type) throws IOException {
+        return isCborSession(sessionId) ? cborMapper.readValue(payload, type) : jsonMapper.readValue(payload, type);
+    }
+
+    // Outbound channel: re-encode JSON payloads for sessions that negotiated CBOR
+    @Override
+    public Message<?> preSend(@NotNull Message<?> message, @NotNull MessageChannel channel) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        if (!isCborSession(sessionId) || !(message.getPayload() instanceof byte[] payload) || payload.length == 0) {
+            return message;
+        }
+
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        MimeType contentType = accessor.getContentType();
+        if (contentType == null || !MimeTypeUtils.APPLICATION_JSON.isCompatibleWith(contentType)) {
+            return message;
+        }
+
+        try {
+            long start = System.nanoTime();
+            JsonNode tree = jsonMapper.readTree(payload);
+            byte[] encoded = cborMapper.writeValueAsBytes(tree);
+            encodeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            jsonBytes.record(payload.length);
+            cborBytes.record(encoded.length);
+
+            // STOMP only emits binary WebSocket frames for octet-stream content
+            accessor.setContentType(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+            accessor.setNativeHeader(PAYLOAD_FORMAT_HEADER, CBOR_FORMAT);
+            return MessageBuilder.createMessage(encoded, accessor.getMessageHeaders());
+        } catch (Exception ex) {
+            log.warn("Failed to encode CBOR payload for session {}, sending JSON: {}", sessionId, ex.getMessage());
+            return message;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package org.zemo.omninet.chat.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Component;
+import org.zemo.omninet.security.model.User;
+
+import java.security.Principal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-user, per-destination rate limiter for inbound STOMP SEND frames.
+ * Each bucket is a single {@link AtomicLong} holding the theoretical arrival time (GCRA),
+ * which behaves like a token bucket with the given rate and burst but needs no locking.
+ * Destinations without their own limit share one "other" bucket per user, so the number of
+ * buckets stays bounded whatever destinations a client sends to.
+ * Frames over the limit are dropped before they reach a controller or the database, and the
+ * user is told on /queue/errors, at most once per second.
+ */
+@Component
+@Slf4j
+public class InboundRateLimiter implements ChannelInterceptor {
+
+    private final Map<String, Limit> limits = new ConcurrentHashMap<>();
+    private static final String OTHER = "other";
+    private static final String NOTICE = "notice";
+    private static final Limit NOTICE_LIMIT = Limit.of(1, 1);
+
+    private final Limit defaultLimit;
+    private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+    private final SimpMessagingTemplate broker;
+
+    private record Limit(long intervalNanos, long burstNanos) {
+        static Limit of(double perSecond, int burst) {
+            long interval = (long) (TimeUnit.SECONDS.toNanos(1) / perSecond);
+            return new Limit(interval, interval * Math.max(0, burst - 1));
+        }
+    }
+
+    // Lazy, since the messaging template is built by the broker configuration this limiter is part of
+    public InboundRateLimiter(MeterRegistry meterRegistry,
+                              @Lazy SimpMessagingTemplate broker,
+                              @Value("${chat.ws.rate-limit.chat-send.per-second:5}") double chatSendRate,
+                              @Value("${chat.ws.rate-limit.chat-send.burst:20}") int chatSendBurst,
+                              @Value("${chat.ws.rate-limit.chat-typing.per-second:2}") double typingRate,
+                              @Value("${chat.ws.rate-limit.chat-typing.burst:5}") int typingBurst,
+                              @Value("${chat.ws.rate-limit.ice-candidate.per-second:20}") double iceRate,
+                              @Value("${chat.ws.rate-limit.ice-candidate.burst:50}") int iceBurst,
+                              @Value("${chat.ws.rate-limit.default.per-second:10}") double defaultRate,
+                              @Value("${chat.ws.rate-limit.default.burst:20}") int defaultBurst) {
+        this.meterRegistry = meterRegistry;
+        this.broker = broker;
+        limits.put("/app/chat.send", Limit.of(chatSendRate, chatSendBurst));
+        limits.put("/app/chat.typing", Limit.of(typingRate, typingBurst));
+        limits.put("/app/call.ice-candidate", Limit.of(iceRate, iceBurst));
+        this.defaultLimit = Limit.of(defaultRate, defaultBurst);
+    }
+
+    @Override
+    public Message<?> preSend(@NotNull Message<?> message, @NotNull MessageChannel channel) {
+        if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.MESSAGE) {
+            return message;
+        }
+
+        String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        if (destination == null) {
+            return message;
+        }
+
+        String caller = callerKey(message);
+        if (caller == null) {
+            return message;
+        }
+
+        long now = System.nanoTime();
+        Limit limit = limits.getOrDefault(destination, defaultLimit);
+        String tag = limits.containsKey(destination) ? destination : OTHER;
+        AtomicLong bucket = buckets.computeIfAbsent(caller + "|" + tag, k -> new AtomicLong(now));
+
+        if (!tryAcquire(bucket, limit, now)) {
+            meterRegistry.counter("chat.inbound.rate.limited", "destination", tag).increment();
+            log.debug("Rate limited {} on {}", caller, destination);
+            notifyLimited(message, caller, destination, now);
+            return null;
+        }
+        return message;
+    }
+
+    // Rate limited itself, so a flooding client does not get one error message per dropped frame
+    private void notifyLimited(Message<?> message, String caller, String destination, long now) {
+        Principal principal = SimpMessageHeaderAccessor.getUser(message.getHeaders());
+        if (principal == null) {
+            return;
+        }
+        AtomicLong notice = buckets.computeIfAbsent(caller + "|" + NOTICE, k -> new AtomicLong(now));
+        if (!tryAcquire(notice, NOTICE_LIMIT, now)) {
+            return;
+        }
+        try {
+            broker.convertAndSendToUser(principal.getName(), "/queue/errors",
+                    "Rate limit exceeded for " + destination + ", message dropped");
+        } catch (Exception e) {
+            log.debug("Could not notify {} of rate limiting: {}", caller, e.getMessage());
+        }
+    }
+
+    private boolean tryAcquire(AtomicLong bucket, Limit limit, long now) {
+        while (true) {
+            long tat = bucket.get();
+            long base = Math.max(tat, now);
+            if (base - now > limit.burstNanos()) {
+                return false;
+            }
+            if (bucket.compareAndSet(tat, base + limit.intervalNanos())) {
+                return true;
+            }
+        }
+    }
+
+    private String callerKey(Message<?> message) {
+        Principal principal = SimpMessageHeaderAccessor.getUser(message.getHeaders());
+        if (principal instanceof Authentication auth && auth.getPrincipal() instanceof User user) {
+            return user.getId();
+        }
+        return SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+    }
+
+    // Buckets whose arrival time has passed are full again and can be dropped
+    @Scheduled(fixedRate = 60000)
+    public void evictIdleBuckets() {
+        long now = System.nanoTime();
+        buckets.values().removeIf(bucket -> bucket.get() - now < 0);
+    }
+}
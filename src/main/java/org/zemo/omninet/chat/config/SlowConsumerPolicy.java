@@ -0,0 +1,363 @@
+package org.zemo.omninet.chat.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+import org.zemo.omninet.chat.dto.MarkReadRequest;
+import org.zemo.omninet.chat.dto.MessageView;
+import org.zemo.omninet.chat.dto.TypingEvent;
+import org.zemo.omninet.chat.mq.MessageQueueService;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks bytes per WebSocket session from the moment a message enters the client outbound
+ * channel until its frame is written to the socket, which covers both the executor queue and
+ * Spring's per-session send buffer. Applies the slow-consumer policy: once a session passes the
+ * soft limit, status events (typing, read receipts) are coalesced to the latest one per sender and
+ * sent when it drains, and a session over the hard limit is disconnected. Chat messages that were still queued or buffered when a session closes, for
+ * whatever reason, are spilled to the offline queue so they are redelivered on reconnect.
+ */
+@Component
+@Slf4j
+public class SlowConsumerPolicy implements ExecutorChannelInterceptor, WebSocketHandlerDecoratorFactory {
+
+    private static final String MESSAGES_PREFIX = "/queue/messages-";
+    private static final String TYPING_PREFIX = "/queue/typing-";
+    private static final String READ_PREFIX = "/queue/read-";
+
+    private final MessageQueueService mq;
+    private final BinaryPayloadNegotiator payloadNegotiator;
+
+    private final long softLimitBytes;
+    private final long hardLimitBytes;
+
+    private final Map<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
+    private final Map<String, SessionBuffer> buffers = new ConcurrentHashMap<>();
+
+    // The client outbound channel, for sending coalesced events once a session drains
+    private volatile MessageChannel outboundChannel;
+
+    private final Counter droppedEvents;
+    private final Counter coalescedEvents;
+    private final Counter spilledMessages;
+    private final Counter disconnectedSessions;
+
+    private record Unwritten(String destination, byte[] payload) {
+    }
+
+    private static class SessionBuffer {
+        final AtomicLong bytes = new AtomicLong();
+        // Handed to the session but not yet written to the socket, in hand-off order
+        final Queue<Unwritten> unwritten = new ConcurrentLinkedQueue<>();
+        // Latest status event per destination and sender, held while the session is over the soft limit
+        final Map<String, Message<?>> coalesced = new ConcurrentHashMap<>();
+        volatile boolean closing;
+    }
+
+    public SlowConsumerPolicy(MessageQueueService mq,
+                              BinaryPayloadNegotiator payloadNegotiator,
+                              MeterRegistry meterRegistry,
+                              @Value("${chat.ws.outbound.soft-limit-bytes:262144}") long softLimitBytes,
+                              @Value("${chat.ws.outbound.hard-limit-bytes:1048576}") long hardLimitBytes) {
+        this.mq = mq;
+        this.payloadNegotiator = payloadNegotiator;
+        this.softLimitBytes = softLimitBytes;
+        this.hardLimitBytes = hardLimitBytes;
+
+        this.droppedEvents = meterRegistry.counter("chat.outbound.dropped");
+        this.coalescedEvents = meterRegistry.counter("chat.outbound.coalesced");
+        this.spilledMessages = meterRegistry.counter("chat.outbound.spilled");
+        this.disconnectedSessions = meterRegistry.counter("chat.outbound.slow.disconnects");
+        Gauge.builder("chat.outbound.buffered.bytes.total", buffers,
+                        b -> b.values().stream().mapToLong(sb -> sb.bytes.get()).sum())
+                .register(meterRegistry);
+    }
+
+    @Override
+    public WebSocketHandler decorate(@NotNull WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(@NotNull WebSocketSession session) throws Exception {
+                sessions.put(session.getId(), session);
+                // Spring buffers on top of this session, so every write it sees has left that buffer
+                super.afterConnectionEstablished(new WebSocketSessionDecorator(session) {
+                    @Override
+                    public void sendMessage(@NotNull WebSocketMessage<?> message) throws IOException {
+                        super.sendMessage(message);
+                        written(getId(), message);
+                    }
+                });
+            }
+
+            @Override
+            public void afterConnectionClosed(@NotNull WebSocketSession session, @NotNull CloseStatus closeStatus) throws Exception {
+                sessions.remove(session.getId());
+                SessionBuffer buffer = buffers.remove(session.getId());
+                if (buffer != null) {
+                    // Before the disconnect event, while the session's payload format is still known
+                    for (Unwritten pending; (pending = buffer.unwritten.poll()) != null; ) {
+                        shed(session.getId(), pending.destination(), pending.payload());
+                    }
+                }
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        };
+    }
+
+    @Override
+    public Message<?> preSend(@NotNull Message<?> message, @NotNull MessageChannel channel) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        if (sessionId == null || !(message.getPayload() instanceof byte[] payload) || !sessions.containsKey(sessionId)) {
+            return message;
+        }
+
+        String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        SessionBuffer buffer = buffers.computeIfAbsent(sessionId, id -> new SessionBuffer());
+
+        if (buffer.closing) {
+            shed(sessionId, destination, payload);
+            return null;
+        }
+
+        if (buffer.bytes.get() > softLimitBytes) {
+            String key = coalesceKey(sessionId, destination, payload);
+            if (key != null) {
+                outboundChannel = channel;
+                if (buffer.coalesced.put(key, message) != null) {
+                    coalescedEvents.increment();
+                }
+                // The session may have drained before the event was held
+                if (buffer.bytes.get() <= softLimitBytes) {
+                    flushCoalesced(sessionId, buffer);
+                }
+                return null;
+            }
+        }
+
+        // Reserve the bytes atomically, so concurrent sends cannot together overshoot the hard limit
+        long pending;
+        do {
+            pending = buffer.bytes.get();
+            if (pending + payload.length > hardLimitBytes) {
+                shed(sessionId, destination, payload);
+                disconnect(sessionId, buffer, pending);
+                return null;
+            }
+        } while (!buffer.bytes.compareAndSet(pending, pending + payload.length));
+        return message;
+    }
+
+    // Null unless the message is a status event that a later one from the same sender supersedes
+    private String coalesceKey(String sessionId, String destination, byte[] payload) {
+        if (destination == null) {
+            return null;
+        }
+        try {
+            if (destination.startsWith(TYPING_PREFIX)) {
+                return destination + "|" + payloadNegotiator.readPayload(sessionId, payload, TypingEvent.class).getFromEmail();
+            }
+            if (destination.startsWith(READ_PREFIX)) {
+                return destination + "|" + payloadNegotiator.readPayload(sessionId, payload, MarkReadRequest.class).getMyEmail();
+            }
+        } catch (Exception e) {
+            log.debug("Could not read status event for session {}: {}", sessionId, e.getMessage());
+        }
+        return null;
+    }
+
+    private void flushCoalesced(String sessionId, SessionBuffer buffer) {
+        MessageChannel channel = outboundChannel;
+        if (channel == null) {
+            return;
+        }
+        for (String key : buffer.coalesced.keySet()) {
+            Message<?> held = buffer.coalesced.remove(key);
+            if (held == null) {
+                continue;
+            }
+            try {
+                channel.send(held);
+            } catch (Exception e) {
+                droppedEvents.increment();
+                log.debug("Could not send coalesced event to session {}: {}", sessionId, e.getMessage());
+            }
+        }
+    }
+
+    // A message that never reached the executor (rejected by its full queue, or dropped by a later
+    // interceptor) will not be handled, so its bytes are released here instead
+    @Override
+    public void afterSendCompletion(@NotNull Message<?> message, @NotNull MessageChannel channel,
+                                    boolean sent, Exception ex) {
+        if (!sent || ex != null) {
+            release(message);
+        }
+    }
+
+    // Recorded before the handler runs, since the frame may be written before the handler returns
+    @Override
+    public Message<?> beforeHandle(@NotNull Message<?> message, @NotNull MessageChannel channel,
+                                   @NotNull MessageHandler handler) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        if (sessionId == null || !(message.getPayload() instanceof byte[] payload) || payload.length == 0) {
+            return message;
+        }
+        String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        SessionBuffer buffer = buffers.get(sessionId);
+        if (buffer == null) {
+            if (sessions.containsKey(sessionId)) {
+                return message;
+            }
+            // The session closed while the message was queued, so it can no longer be sent
+            shed(sessionId, destination, payload);
+            return null;
+        }
+
+        Unwritten pending = new Unwritten(destination, payload);
+        buffer.unwritten.add(pending);
+        if (!buffers.containsKey(sessionId) && buffer.unwritten.remove(pending)) {
+            shed(sessionId, destination, payload);
+            return null;
+        }
+        return message;
+    }
+
+    // A handled message stays counted until its frame is written, since Spring may still be buffering it
+    @Override
+    public void afterMessageHandled(@NotNull Message<?> message, @NotNull MessageChannel channel,
+                                    @NotNull MessageHandler handler, Exception ex) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        if (ex == null || sessionId == null || !(message.getPayload() instanceof byte[] payload)) {
+            return;
+        }
+        SessionBuffer buffer = buffers.get(sessionId);
+        if (buffer != null && buffer.unwritten.removeIf(pending -> pending.payload() == payload)) {
+            release(sessionId, buffer, payload.length);
+        }
+    }
+
+    // Releases the oldest buffered message whose body the written frame carries
+    private void written(String sessionId, WebSocketMessage<?> frame) {
+        SessionBuffer buffer = buffers.get(sessionId);
+        if (buffer == null || buffer.unwritten.isEmpty()) {
+            return;
+        }
+        byte[] frameBytes = frameBytes(frame);
+        if (frameBytes == null) {
+            return;
+        }
+        for (Iterator<Unwritten> it = buffer.unwritten.iterator(); it.hasNext(); ) {
+            Unwritten pending = it.next();
+            if (carries(frameBytes, pending.payload()) && buffer.unwritten.remove(pending)) {
+                release(sessionId, buffer, pending.payload().length);
+                return;
+            }
+        }
+    }
+
+    private static byte[] frameBytes(WebSocketMessage<?> frame) {
+        if (frame instanceof TextMessage text) {
+            return text.asBytes();
+        }
+        if (frame instanceof BinaryMessage binary) {
+            ByteBuffer payload = binary.getPayload().duplicate();
+            byte[] bytes = new byte[payload.remaining()];
+            payload.get(bytes);
+            return bytes;
+        }
+        return null;
+    }
+
+    // A STOMP frame ends with its body followed by a NUL octet
+    static boolean carries(byte[] frame, byte[] body) {
+        int end = frame.length - 1;
+        int start = end - body.length;
+        return start >= 0 && frame[end] == 0 && Arrays.equals(frame, start, end, body, 0, body.length);
+    }
+
+    private void release(Message<?> message) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        if (sessionId == null || !(message.getPayload() instanceof byte[] payload)) {
+            return;
+        }
+        SessionBuffer buffer = buffers.get(sessionId);
+        if (buffer != null) {
+            release(sessionId, buffer, payload.length);
+        }
+    }
+
+    private void release(String sessionId, SessionBuffer buffer, long bytes) {
+        if (buffer.bytes.addAndGet(-bytes) <= softLimitBytes && !buffer.coalesced.isEmpty()) {
+            flushCoalesced(sessionId, buffer);
+        }
+    }
+
+    public long getBufferedBytes(String sessionId) {
+        SessionBuffer buffer = buffers.get(sessionId);
+        return buffer != null ? buffer.bytes.get() : 0;
+    }
+
+    private void shed(String sessionId, String destination, byte[] payload) {
+        if (destination != null && destination.startsWith(MESSAGES_PREFIX)) {
+            spill(sessionId, destination.substring(MESSAGES_PREFIX.length()), payload);
+        } else {
+            droppedEvents.increment();
+        }
+    }
+
+    // Only messages addressed to the recipient are spilled; sender echoes are recoverable from history
+    private void spill(String sessionId, String destinationEmail, byte[] payload) {
+        try {
+            MessageView view = payloadNegotiator.readPayload(sessionId, payload, MessageView.class);
+            if (destinationEmail.equals(view.getReceiverEmail())) {
+                mq.publishUndelivered(view);
+                spilledMessages.increment();
+            }
+        } catch (Exception e) {
+            log.error("Failed to spill message for slow consumer {}: {}", destinationEmail, e.getMessage());
+        }
+    }
+
+    private void disconnect(String sessionId, SessionBuffer buffer, long pending) {
+        buffer.closing = true;
+
+        WebSocketSession session = sessions.get(sessionId);
+        if (session == null) {
+            return;
+        }
+        try {
+            log.warn("Disconnecting slow consumer session {} ({} bytes pending)", sessionId, pending);
+            disconnectedSessions.increment();
+            session.close(CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (Exception e) {
+            log.error("Error closing slow consumer session {}: {}", sessionId, e.getMessage());
+        }
+    }
+}
@@ -1,12 +1,22 @@
 package org.zemo.omninet.chat.config;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.messaging.converter.MessageConverter;
 import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.web.socket.WebSocketHandler;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.util.List;
+import java.util.Map;
 
 @Configuration
 @EnableWebSocketMessageBroker
@@ -15,13 +25,52 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
     // Inject the AuthChannelInterceptor bean directly
     private final AuthChannelInterceptor authChannelInterceptor;
+    private final SlowConsumerPolicy slowConsumerPolicy;
+    private final BinaryPayloadNegotiator binaryPayloadNegotiator;
+    private final InboundRateLimiter inboundRateLimiter;
+
+    @Value("${chat.ws.send-time-limit-ms:15000}")
+    private int sendTimeLimitMs;
+
+    // Above chat.ws.outbound.hard-limit-bytes, so the slow-consumer policy sheds typing events before Spring closes the session
+    @Value("${chat.ws.send-buffer-size-limit:2097152}")
+    private int sendBufferSizeLimit;
+
+    @Value("${chat.ws.message-size-limit:65536}")
+    private int messageSizeLimit;
+
+    @Value("${chat.ws.outbound.pool-size:0}")
+    private int outboundPoolSize;
+
+    @Value("${chat.ws.outbound.queue-capacity:10000}")
+    private int outboundQueueCapacity;
 
     @Override
     public void registerStompEndpoints(StompEndpointRegistry registry) {
+        // Hand a session's frames to the inbound channel one at a time, so sends reach their stripe in arrival order
+        registry.setPreserveReceiveOrder(true);
+
         // Handshake interceptors are added here, but we are not using one anymore.
         registry.addEndpoint("/ws")
                 .setAllowedOriginPatterns("*")
                 .withSockJS();
+
+        // Raw WebSocket endpoint for modern clients; may negotiate CBOR payloads on CONNECT
+        registry.addEndpoint("/ws-native")
+                .setAllowedOriginPatterns("*")
+                .addInterceptors(new HandshakeInterceptor() {
+                    @Override
+                    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+                        attributes.put(BinaryPayloadNegotiator.NATIVE_TRANSPORT_ATTR, true);
+                        return true;
+                    }
+
+                    @Override
+                    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                               WebSocketHandler wsHandler, Exception exception) {
+                    }
+                });
     }
 
     @Override
@@ -33,6 +82,34 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     @Override
     public void configureClientInboundChannel(ChannelRegistration registration) {
         // This is the correct place to register a ChannelInterceptor
-        registration.interceptors(authChannelInterceptor);
+        // Rate limiting runs after authentication so buckets are keyed by user
+        registration.interceptors(authChannelInterceptor, inboundRateLimiter);
+    }
+
+    @Override
+    public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+        // Keep the default JSON converters and add CBOR for frames sent as application/cbor
+        messageConverters.add(binaryPayloadNegotiator.cborMessageConverter());
+        return true;
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        // Bound what a single slow session can hold in memory; sessions over these limits are closed
+        registration.setSendTimeLimit(sendTimeLimitMs)
+                .setSendBufferSizeLimit(sendBufferSizeLimit)
+                .setMessageSizeLimit(messageSizeLimit)
+                .addDecoratorFactory(slowConsumerPolicy);
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        int poolSize = outboundPoolSize > 0 ? outboundPoolSize : Runtime.getRuntime().availableProcessors() * 2;
+        registration.taskExecutor()
+                .corePoolSize(poolSize)
+                .maxPoolSize(poolSize)
+                .queueCapacity(outboundQueueCapacity);
+        // Re-encode before the slow-consumer policy so it accounts for the bytes actually sent
+        registration.interceptors(binaryPayloadNegotiator, slowConsumerPolicy);
     }
 }
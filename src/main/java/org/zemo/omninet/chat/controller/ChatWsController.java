@@ -9,15 +9,18 @@ import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Controller;
+import org.springframework.util.StringUtils;
 import org.springframework.web.socket.messaging.SessionSubscribeEvent;
 import org.springframework.validation.annotation.Validated;
 import org.zemo.omninet.chat.dto.*;
 import org.zemo.omninet.chat.service.CallService;
+import org.zemo.omninet.chat.service.ConversationExecutor;
 import org.zemo.omninet.chat.service.MessageService;
 import org.zemo.omninet.security.model.User;
 import jakarta.validation.Valid;
 
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
 
 @Controller
 @RequiredArgsConstructor
@@ -28,6 +31,7 @@ public class ChatWsController {
     private final MessageService messages;
     private final CallService callService;
     private final SimpMessagingTemplate broker;
+    private final ConversationExecutor conversationExecutor;
 
     // Improved deduplication caches
     private final ConcurrentHashMap<String, Long> iceCandidateCache = new ConcurrentHashMap<>();
@@ -58,9 +62,27 @@ public class ChatWsController {
             }
 
             User currentUser = (User) auth.getPrincipal();
+            if (!StringUtils.hasText(dto.getReceiverEmail())) {
+                throw new IllegalArgumentException("Receiver email cannot be empty");
+            }
             log.debug("User {} sending message to {}", currentUser.getEmail(), dto.getReceiverEmail());
 
-            messages.send(currentUser.getEmail(), dto);
+            // Sends for the same conversation are serialized on one stripe so they persist in arrival order
+            String conversationKey = ConversationExecutor.conversationKey(currentUser.getEmail(), dto.getReceiverEmail());
+            String principalName = auth.getName();
+            conversationExecutor.execute(conversationKey, () -> {
+                try {
+                    messages.send(currentUser.getEmail(), dto);
+                } catch (Exception e) {
+                    log.error("Error sending message: {}", e.getMessage(), e);
+                    broker.convertAndSendToUser(principalName, "/queue/errors",
+                        "Failed to send message: " + e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("Conversation queue full, rejecting message from {}", auth.getName());
+            broker.convertAndSendToUser(auth.getName(), "/queue/errors",
+                "Failed to send message: server is busy, please retry");
         } catch (Exception e) {
             log.error("Error sending message: {}", e.getMessage(), e);
             // Send error back to sender
@@ -0,0 +1,99 @@
+package org.zemo.omninet.chat.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs chat work on a fixed set of single-threaded stripes keyed by conversation.
+ * Tasks for the same conversation always land on the same stripe and run in FIFO order,
+ * while different conversations are processed in parallel. Each stripe's queue is bounded,
+ * so a stalled stripe rejects new work instead of holding it in memory without limit.
+ */
+@Component
+@Slf4j
+public class ConversationExecutor {
+
+    private final ThreadPoolExecutor[] stripes;
+
+    public ConversationExecutor(@Value("${chat.send.stripes:0}") int configuredStripes,
+                                @Value("${chat.send.stripe-queue-capacity:1000}") int queueCapacity,
+                                MeterRegistry meterRegistry) {
+        int count = configuredStripes > 0 ? configuredStripes : Runtime.getRuntime().availableProcessors() * 2;
+        this.stripes = new ThreadPoolExecutor[count];
+
+        for (int i = 0; i < count; i++) {
+            String threadName = "chat-stripe-" + i;
+            ThreadPoolExecutor stripe = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(queueCapacity), r -> {
+                        Thread t = new Thread(r, threadName);
+                        t.setDaemon(true);
+                        return t;
+                    });
+            stripes[i] = stripe;
+
+            Gauge.builder("chat.stripe.queue.depth", stripe, s -> s.getQueue().size())
+                    .tag("stripe", String.valueOf(i))
+                    .description("Pending chat tasks waiting on a conversation stripe")
+                    .register(meterRegistry);
+        }
+
+        log.info("Conversation executor started with {} stripes", count);
+    }
+
+    // Conversation key is order independent so both directions share a stripe
+    public static String conversationKey(String emailA, String emailB) {
+        return emailA.compareTo(emailB) <= 0 ? emailA + "|" + emailB : emailB + "|" + emailA;
+    }
+
+    /**
+     * @throws RejectedExecutionException if the conversation's stripe queue is full.
+     */
+    public void execute(String conversationKey, Runnable task) {
+        stripeFor(conversationKey).execute(() -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                log.error("Error running task for conversation {}: {}", conversationKey, e.getMessage(), e);
+            }
+        });
+    }
+
+    public int getQueueDepth(String conversationKey) {
+        return stripeFor(conversationKey).getQueue().size();
+    }
+
+    private ThreadPoolExecutor stripeFor(String conversationKey) {
+        return stripes[Math.floorMod(conversationKey.hashCode(), stripes.length)];
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        int pending = 0;
+        for (ThreadPoolExecutor stripe : stripes) {
+            pending += stripe.getQueue().size();
+            stripe.shutdown();
+        }
+        if (pending > 0) {
+            log.info("Draining {} pending chat tasks before shutdown", pending);
+        }
+        for (ThreadPoolExecutor stripe : stripes) {
+            try {
+                if (!stripe.awaitTermination(10, TimeUnit.SECONDS)) {
+                    stripe.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                stripe.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -21,8 +21,10 @@ import org.zemo.omninet.notes.entity.FileDetails;
 import org.zemo.omninet.notes.exception.ResourceNotFoundException;
 import org.zemo.omninet.notes.service.NotesService;
 import org.zemo.omninet.notes.util.CommonUtil;
+import org.zemo.omninet.storage.service.RangeDownloadService;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.List;
 
 import static org.zemo.omninet.notes.util.Constants.DEFAULT_PAGE_NO;
@@ -38,6 +40,9 @@ public class NotesController {
     @Autowired
     private NotesService notesService;
 
+    @Autowired
+    private RangeDownloadService rangeDownloadService;
+
     // save or update
     @PostMapping(value = "/", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     @PreAuthorize("hasAnyRole('ROLE_USER','ADMIN')")
@@ -69,16 +74,14 @@ public class NotesController {
 
     @GetMapping("/download/{id}")
     @PreAuthorize("hasAnyRole('ROLE_USER','ADMIN')")
-    public ResponseEntity<?> downloadFile(@PathVariable Integer id) throws ResourceNotFoundException, IOException {
+    public ResponseEntity<?> downloadFile(@PathVariable Integer id, @RequestHeader HttpHeaders requestHeaders)
+            throws ResourceNotFoundException, IOException {
         FileDetails fileDetails = notesService.getFileDetails(id);
-        byte[] downloadFile = notesService.downloadFile(fileDetails);
+        Path path = notesService.getFilePath(fileDetails);
 
-        HttpHeaders headers = new HttpHeaders();
         String contentType = CommonUtil.getContentType(fileDetails.getOriginalFileName());
-        headers.setContentType(MediaType.parseMediaType(contentType));
-        headers.setContentDispositionFormData("attachment", fileDetails.getOriginalFileName());
-
-        return ResponseEntity.ok().headers(headers).body(downloadFile);
+        return rangeDownloadService.serve(requestHeaders, RangeDownloadService.RangeSource.ofFile(path),
+                MediaType.parseMediaType(contentType), fileDetails.getOriginalFileName());
     }
 
 
@@ -0,0 +1,26 @@
+package org.zemo.omninet.notes.entity;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+// Progress of a batch reminder run, so a restarted node resumes instead of starting over
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+public class ReminderCheckpoint {
+
+    @Id
+    private String jobName;
+
+    private LocalDate runDate;
+
+    private String lastOwner;
+
+    private boolean completed;
+}
@@ -13,6 +13,9 @@ import org.springframework.data.jpa.domain.support.AuditingEntityListener;
 @NoArgsConstructor
 @EntityListeners(AuditingEntityListener.class)  // auditing
 @Builder
+@Table(indexes = {
+        @Index(name = "idx_todo_created_by_status", columnList = "created_by, status_id")
+})
 public class Todo extends BaseModel {
 
     @Id
@@ -0,0 +1,7 @@
+package org.zemo.omninet.notes.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.zemo.omninet.notes.entity.ReminderCheckpoint;
+
+public interface ReminderCheckpointRepo extends JpaRepository<ReminderCheckpoint, String> {
+}
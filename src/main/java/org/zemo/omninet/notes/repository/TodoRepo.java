@@ -1,10 +1,14 @@
 package org.zemo.omninet.notes.repository;
 
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.zemo.omninet.notes.entity.Todo;
 
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -16,6 +20,12 @@ public interface TodoRepo extends JpaRepository<Todo, Integer> {
 
     List<Todo> findByStatusIdIn(List<Integer> id);
 
+    // Keyset page of todo owners, ordered so a reminder run can resume after the last owner it handled
+    @Query("select distinct t.createdBy from Todo t where t.statusId in :statusIds and t.createdBy > :after order by t.createdBy")
+    List<String> findOwnersByStatusAfter(@Param("statusIds") List<Integer> statusIds, @Param("after") String after, Pageable pageable);
+
+    List<Todo> findByCreatedByInAndStatusIdIn(Collection<String> createdBy, List<Integer> statusIds);
+
     Optional<Todo> findByIdAndCreatedBy(Integer id, String email);
 
 }
@@ -8,6 +8,7 @@ import org.zemo.omninet.notes.entity.FileDetails;
 import org.zemo.omninet.notes.exception.ResourceNotFoundException;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.List;
 
 
@@ -19,7 +20,7 @@ public interface NotesService {
     List<NotesDto> getAllNotes();
 
 
-    byte[] downloadFile(FileDetails fileDetails) throws ResourceNotFoundException, IOException;
+    Path getFilePath(FileDetails fileDetails) throws ResourceNotFoundException;
 
     FileDetails getFileDetails(Integer id) throws ResourceNotFoundException;
 
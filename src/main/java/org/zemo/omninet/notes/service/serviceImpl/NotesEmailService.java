@@ -1,37 +1,36 @@
 package org.zemo.omninet.notes.service.serviceImpl;
 
 
-import jakarta.mail.MessagingException;
-import jakarta.mail.internet.MimeMessage;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.stereotype.Component;
 import org.zemo.omninet.notes.dto.EmailRequest;
+import org.zemo.omninet.security.service.MailDispatcher;
 
-import java.io.UnsupportedEncodingException;
+import java.util.concurrent.CompletableFuture;
 
 @Component
 public class NotesEmailService {
 
     @Autowired
-    private JavaMailSender mailSender;
+    private MailDispatcher mailDispatcher;
 
     @Value("${spring.mail.username}")
     private String mailFrom;
 
-    public void sendEmail(EmailRequest emailRequest) throws MessagingException, UnsupportedEncodingException {
-        MimeMessage mimeMessage = mailSender.createMimeMessage();
-
-        // "true"  ->  allows HTML content
-        MimeMessageHelper helper = new MimeMessageHelper(mimeMessage, true);
-
-        helper.setFrom(mailFrom, emailRequest.getTitle());
-        helper.setTo(emailRequest.getTo());
-        helper.setSubject(emailRequest.getSubject());
-        helper.setText(emailRequest.getMessage(), true);
-
-        mailSender.send(mimeMessage);
+    // Reminders go out at low priority so they never delay OTP or account emails.
+    // The future completes once the mail has actually been sent.
+    public CompletableFuture<Void> sendEmail(EmailRequest emailRequest) {
+        return mailDispatcher.submit(MailDispatcher.Priority.LOW,
+                emailRequest.getSubject() + " to " + emailRequest.getTo(), mimeMessage -> {
+                    // "true"  ->  allows HTML content
+                    MimeMessageHelper helper = new MimeMessageHelper(mimeMessage, true);
+
+                    helper.setFrom(mailFrom, emailRequest.getTitle());
+                    helper.setTo(emailRequest.getTo());
+                    helper.setSubject(emailRequest.getSubject());
+                    helper.setText(emailRequest.getMessage(), true);
+                });
     }
 }
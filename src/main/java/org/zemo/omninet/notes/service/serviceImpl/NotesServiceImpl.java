@@ -2,7 +2,6 @@ package org.zemo.omninet.notes.service.serviceImpl;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.commons.io.FilenameUtils;
-import org.apache.commons.io.IOUtils;
 import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -26,10 +25,9 @@ import org.zemo.omninet.notes.service.NotesService;
 import org.zemo.omninet.notes.util.CommonUtil;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.util.Arrays;
@@ -184,12 +182,12 @@ public class NotesServiceImpl implements NotesService {
 
 
     @Override
-    public byte[] downloadFile(FileDetails fileDetails) throws ResourceNotFoundException, IOException {
-        // logic
-        InputStream io = new FileInputStream(fileDetails.getPath());
-
-        return IOUtils.toByteArray(io);
-
+    public Path getFilePath(FileDetails fileDetails) throws ResourceNotFoundException {
+        Path path = Paths.get(fileDetails.getPath());
+        if (!Files.isReadable(path)) {
+            throw new ResourceNotFoundException("file is not available");
+        }
+        return path;
     }
 
     @Override
@@ -1,24 +1,95 @@
 package org.zemo.omninet.notes.service.serviceImpl;
 
 
-import jakarta.mail.MessagingException;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.zemo.omninet.notes.dto.EmailRequest;
+import org.zemo.omninet.notes.entity.ReminderCheckpoint;
 import org.zemo.omninet.notes.entity.Todo;
 import org.zemo.omninet.notes.enums.TodoStatus;
+import org.zemo.omninet.notes.repository.ReminderCheckpointRepo;
 import org.zemo.omninet.notes.repository.TodoRepo;
 import org.zemo.omninet.security.repository.UserRepository;
 import org.zemo.omninet.security.model.User;
+import org.zemo.omninet.security.service.MailDispatcher;
+import org.zemo.omninet.security.util.HtmlTemplate;
 
-import java.io.UnsupportedEncodingException;
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
-
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Daily reminder run for incomplete todos. Owners are scanned in keyset pages ordered by email;
+ * each page batch-loads its users and todos, renders the emails in parallel and hands them to the
+ * mail dispatcher, pausing while the dispatcher is backed up. The checkpoint only moves past a
+ * page once its mails have been sent, so a node that restarts mid-run resends the page it was on
+ * rather than skipping mails that were still queued.
+ */
 @Service
+@Slf4j
 public class TodoNotificationService {
 
-    // help by copilot for efficient
+    // Compiled once and reused for every reminder; todo titles are escaped when rendered
+    private static final HtmlTemplate REMINDER_TEMPLATE = HtmlTemplate.compile("""
+        <!DOCTYPE html>
+        <html>
+        <head>
+          <meta charset='UTF-8'>
+          <meta name='viewport' content='width=device-width, initial-scale=1.0'>
+          <style>
+            body { font-family: Arial, sans-serif; background-color: #f4f4f4; margin:0; padding:0; }
+            .container { max-width: 600px; margin: 24px auto; background:#ffffff; padding: 20px; border-radius: 10px; box-shadow: 0 4px 15px rgba(0,0,0,0.08); }
+            .header { text-align: center; padding-bottom: 16px; border-bottom: 1px solid #eee; }
+            .header h1 { color: #4CAF50; margin:0; font-size: 22px; }
+            .sub { margin:6px 0 0; color:#888; font-size:12px; }
+            .content { padding: 18px 0; font-size: 16px; color: #333; line-height: 1.55; }
+            .list { margin: 12px 0; padding-left: 20px; }
+            .footer { margin-top: 18px; font-size: 12px; color: #777; text-align:center; border-top:1px solid #eee; padding-top: 12px; }
+          </style>
+        </head>
+        <body>
+          <div class='container'>
+            <div class='header'>
+              <h1>Incomplete Todo Reminder</h1>
+              <p class='sub'>Team Zemo | OmniNet</p>
+            </div>
+            <div class='content'>
+              <p>Hi <b>{{name}}</b>,</p>
+              <p>You have the following incomplete tasks in your <b>OmniNet</b> account:</p>
+              <ul class='list'>{{&todos}}</ul>
+              <p>Please complete them as soon as possible.</p>
+            </div>
+            <div class='footer'>
+              <p>Thanks,<br><b>Team Zemo — OmniNet</b></p>
+            </div>
+          </div>
+        </body>
+        </html>
+        """, "name", "todos");
+
+    private static final HtmlTemplate TODO_ITEM_TEMPLATE = HtmlTemplate.compile("<li><b>{{title}}</b></li>", "title");
+
+    private static final String JOB_NAME = "todo-reminders";
+    private static final List<Integer> INCOMPLETE_STATUSES = List.of(
+            TodoStatus.NOT_STARTED.getId(),
+            TodoStatus.IN_PROGRESS.getId()
+    );
 
     @Autowired
     private TodoRepo todoRepo;
@@ -29,6 +100,27 @@ public class TodoNotificationService {
     @Autowired
     private NotesEmailService notesEmailService;
 
+    @Autowired
+    private ReminderCheckpointRepo checkpointRepo;
+
+    @Autowired
+    private MailDispatcher mailDispatcher;
+
+    @Value("${todo.reminder.batch-size:200}")
+    private int batchSize;
+
+    @Value("${todo.reminder.max-queued-mails:500}")
+    private int maxQueuedMails;
+
+    private final ExecutorService renderPool = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()), r -> {
+                Thread t = new Thread(r, "todo-reminder-render");
+                t.setDaemon(true);
+                return t;
+            });
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
 
     //Runs every day at 8 AM. ->0 0 8 * * ?
 
@@ -37,75 +129,118 @@ public class TodoNotificationService {
 
     @Scheduled(cron = "0 0 8 * * ?")
     public void notifyIncompleteTodos() {
-        // Find all todos that are NOT_COMPLETED
-        List<Todo> incompleteTodos = todoRepo.findByStatusIdIn(List.of(
-                TodoStatus.NOT_STARTED.getId(),
-                TodoStatus.IN_PROGRESS.getId()
-        ));
-
-        // Group by user and send reminders
-        incompleteTodos.stream()
-                .collect(java.util.stream.Collectors.groupingBy(Todo::getCreatedBy))
-                .forEach((userId, todos) -> {
-                    User user = userRepo.findByEmail(userId).orElse(null);
-                    if (user != null && user.getEmail() != null && !todos.isEmpty()) {
-                        StringBuilder todoListHtml = new StringBuilder();
-                        for (Todo todo : todos) {
-                            todoListHtml.append("<li><b>").append(todo.getTitle()).append("</b></li>");
-                        }
-
-                        String message = String.format("""
-                                <!DOCTYPE html>
-                                <html>
-                                <head>
-                                  <meta charset='UTF-8'>
-                                  <meta name='viewport' content='width=device-width, initial-scale=1.0'>
-                                  <style>
-                                    body { font-family: Arial, sans-serif; background-color: #f4f4f4; margin:0; padding:0; }
-                                    .container { max-width: 600px; margin: 24px auto; background:#ffffff; padding: 20px; border-radius: 10px; box-shadow: 0 4px 15px rgba(0,0,0,0.08); }
-                                    .header { text-align: center; padding-bottom: 16px; border-bottom: 1px solid #eee; }
-                                    .header h1 { color: #4CAF50; margin:0; font-size: 22px; }
-                                    .sub { margin:6px 0 0; color:#888; font-size:12px; }
-                                    .content { padding: 18px 0; font-size: 16px; color: #333; line-height: 1.55; }
-                                    .list { margin: 12px 0; padding-left: 20px; }
-                                    .footer { margin-top: 18px; font-size: 12px; color: #777; text-align:center; border-top:1px solid #eee; padding-top: 12px; }
-                                  </style>
-                                </head>
-                                <body>
-                                  <div class='container'>
-                                    <div class='header'>
-                                      <h1>Incomplete Todo Reminder</h1>
-                                      <p class='sub'>Team Zemo | OmniNet</p>
-                                    </div>
-                                    <div class='content'>
-                                      <p>Hi <b>%s</b>,</p>
-                                      <p>You have the following incomplete tasks in your <b>OmniNet</b> account:</p>
-                                      <ul class='list'>%s</ul>
-                                      <p>Please complete them as soon as possible.</p>
-                                    </div>
-                                    <div class='footer'>
-                                      <p>Thanks,<br><b>Team Zemo — OmniNet</b></p>
-                                    </div>
-                                  </div>
-                                </body>
-                                </html>
-                                """, user.getName(), todoListHtml);
-
-
-                        EmailRequest emailRequest = EmailRequest.builder()
-                                .to(user.getEmail())
-                                .subject("Todo Reminder: Incomplete Tasks")
-                                .title("NoteNestor Team")
-                                .message(message)
-                                .build();
-
-                        try {
-                            notesEmailService.sendEmail(emailRequest);
-                        } catch (MessagingException | UnsupportedEncodingException e) {
-                            // Log error
-                            e.printStackTrace();
-                        }
-                    }
-                });
+        runReminders();
+    }
+
+    // Finish today's run if the node went down part way through it
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeUnfinishedRun() {
+        checkpointRepo.findById(JOB_NAME)
+                .filter(c -> LocalDate.now().equals(c.getRunDate()) && !c.isCompleted())
+                .ifPresent(c -> CompletableFuture.runAsync(this::runReminders));
+    }
+
+    private void runReminders() {
+        if (!running.compareAndSet(false, true)) {
+            log.info("Todo reminder run already in progress");
+            return;
+        }
+        try {
+            LocalDate today = LocalDate.now();
+            ReminderCheckpoint checkpoint = checkpointRepo.findById(JOB_NAME)
+                    .filter(c -> today.equals(c.getRunDate()))
+                    .orElseGet(() -> new ReminderCheckpoint(JOB_NAME, today, null, false));
+            if (checkpoint.isCompleted()) {
+                return;
+            }
+
+            String after = checkpoint.getLastOwner() != null ? checkpoint.getLastOwner() : "";
+            int sent = 0;
+            while (true) {
+                List<String> owners = todoRepo.findOwnersByStatusAfter(INCOMPLETE_STATUSES, after, PageRequest.of(0, batchSize));
+                if (owners.isEmpty()) {
+                    break;
+                }
+
+                sent += sendBatch(owners);
+                after = owners.get(owners.size() - 1);
+                checkpoint.setLastOwner(after);
+                checkpointRepo.save(checkpoint);
+            }
+
+            checkpoint.setCompleted(true);
+            checkpointRepo.save(checkpoint);
+            log.info("Todo reminder run finished, {} reminders sent", sent);
+        } catch (Exception e) {
+            log.error("Todo reminder run failed, will resume from the last checkpoint: {}", e.getMessage(), e);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private int sendBatch(List<String> owners) throws InterruptedException {
+        Map<String, User> users = userRepo.findByEmailIn(owners).stream()
+                .collect(Collectors.toMap(User::getEmail, Function.identity(), (a, b) -> a));
+        Map<String, List<Todo>> todosByOwner = todoRepo.findByCreatedByInAndStatusIdIn(owners, INCOMPLETE_STATUSES).stream()
+                .collect(Collectors.groupingBy(Todo::getCreatedBy));
+
+        List<CompletableFuture<EmailRequest>> rendered = owners.stream()
+                .map(owner -> CompletableFuture.supplyAsync(
+                        () -> buildReminder(users.get(owner), todosByOwner.get(owner)), renderPool))
+                .toList();
+
+        List<CompletableFuture<Void>> deliveries = new ArrayList<>();
+        for (CompletableFuture<EmailRequest> future : rendered) {
+            EmailRequest emailRequest = future.join();
+            if (emailRequest == null) {
+                continue;
+            }
+
+            // Back off while the dispatcher is busy so a large run never floods the mail queue
+            while (mailDispatcher.getQueueDepth() >= maxQueuedMails) {
+                Thread.sleep(200);
+            }
+
+            deliveries.add(notesEmailService.sendEmail(emailRequest));
+        }
+
+        int sent = 0;
+        for (CompletableFuture<Void> delivery : deliveries) {
+            try {
+                delivery.join();
+                sent++;
+            } catch (CancellationException e) {
+                throw new IllegalStateException("Mail dispatcher stopped before the page was sent");
+            } catch (CompletionException e) {
+                // Rejected or out of retries; the dispatcher has logged it and the run moves on
+                log.error("Failed to send todo reminder: {}", e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+            }
+        }
+        return sent;
+    }
+
+    private EmailRequest buildReminder(User user, List<Todo> todos) {
+        if (user == null || user.getEmail() == null || todos == null || todos.isEmpty()) {
+            return null;
+        }
+
+        StringBuilder todoListHtml = new StringBuilder();
+        for (Todo todo : todos) {
+            TODO_ITEM_TEMPLATE.renderTo(todoListHtml, todo.getTitle());
+        }
+
+        String message = REMINDER_TEMPLATE.render(user.getName(), todoListHtml);
+
+        return EmailRequest.builder()
+                .to(user.getEmail())
+                .subject("Todo Reminder: Incomplete Tasks")
+                .title("NoteNestor Team")
+                .message(message)
+                .build();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        renderPool.shutdownNow();
     }
 }
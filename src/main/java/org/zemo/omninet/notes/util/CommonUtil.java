@@ -93,6 +93,7 @@ public class CommonUtil {
         if (principal instanceof CustomUserDetails) {
             return ((CustomUserDetails) principal).getUser();
         } else if (principal instanceof User) {
+            // In stateless principal mode this only carries id, email and name from the token
             return (User) principal;
         } else if (principal instanceof org.springframework.security.oauth2.core.user.OAuth2User) {
             // Handle OAuth2User - extract user details from attributes or use your mapping logic
@@ -13,8 +13,9 @@ import org.springframework.security.web.authentication.WebAuthenticationDetailsS
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 import org.zemo.omninet.security.model.User;
+import org.zemo.omninet.security.model.VerifiedClaims;
 import org.zemo.omninet.security.service.JwtService;
-import org.zemo.omninet.security.service.UserService;
+import org.zemo.omninet.security.service.PrincipalResolver;
 
 import java.io.IOException;
 import java.util.List;
@@ -26,7 +27,7 @@ import java.util.Optional;
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final JwtService jwtService;
-    private final UserService userService;
+    private final PrincipalResolver principalResolver;
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
@@ -34,7 +35,6 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
         final String authHeader = request.getHeader("Authorization");
         final String jwt;
-        final String userId;
 
         if (authHeader == null || !authHeader.startsWith("Bearer ")) {
             filterChain.doFilter(request, response);
@@ -44,22 +44,24 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         jwt = authHeader.substring(7);
 
         try {
-            if (!jwtService.isTokenValid(jwt)) {
+            // Single verification: signature, expiry and claims are checked once (and cached)
+            Optional<VerifiedClaims> verified = jwtService.verify(jwt);
+            if (verified.isEmpty()) {
                 log.warn("Invalid JWT token provided");
                 filterChain.doFilter(request, response);
                 return;
             }
 
-            if (!jwtService.isAccessToken(jwt)) {
+            if (!verified.get().isAccessToken()) {
                 log.warn("Refresh token used for authentication, access token required");
                 filterChain.doFilter(request, response);
                 return;
             }
 
-            userId = jwtService.getUserIdFromToken(jwt);
+            String userId = verified.get().userId();
 
             if (userId != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-                Optional<User> userOpt = userService.getUserById(userId);
+                Optional<User> userOpt = principalResolver.resolve(verified.get());
 
                 if (userOpt.isPresent()) {
                     User user = userOpt.get();
@@ -75,7 +77,7 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
                     log.debug("Successfully authenticated user {} via JWT", user.getEmail());
                 } else {
-                    log.warn("User not found for JWT token: {}", userId);
+                    log.warn("User not found or token revoked for JWT token: {}", userId);
                 }
             }
         } catch (Exception e) {
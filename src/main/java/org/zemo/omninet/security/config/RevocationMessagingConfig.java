@@ -0,0 +1,33 @@
+package org.zemo.omninet.security.config;
+
+import org.springframework.amqp.core.AnonymousQueue;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.FanoutExchange;
+import org.springframework.amqp.core.Queue;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class RevocationMessagingConfig {
+
+    @Value("${auth.revocation.exchange:auth.revocations}")
+    private String exchangeName;
+
+    @Bean
+    public FanoutExchange revocationExchange() {
+        return new FanoutExchange(exchangeName, true, false);
+    }
+
+    // Each node gets its own auto-deleted queue so every node sees every revocation
+    @Bean
+    public Queue revocationQueue() {
+        return new AnonymousQueue();
+    }
+
+    @Bean
+    public Binding revocationBinding(FanoutExchange revocationExchange, Queue revocationQueue) {
+        return BindingBuilder.bind(revocationQueue).to(revocationExchange);
+    }
+}
@@ -58,6 +58,7 @@ public class SecurityConfig {
                 .authorizeHttpRequests(authz -> authz
                         .requestMatchers("/",
                                 "/ws/**",
+                                "/ws-native/**",
                                 "/login",
                                 "/error",
                                 "/webjars/**",
@@ -4,12 +4,16 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 import org.zemo.omninet.security.dto.ApiResponse;
 import org.zemo.omninet.security.dto.EmailLoginRequest;
+import org.zemo.omninet.security.exception.TooManyRequestsException;
 import org.zemo.omninet.security.model.User;
+import org.zemo.omninet.security.service.AuthAttemptLimiter;
 import org.zemo.omninet.security.service.AuthenticationService;
 import org.zemo.omninet.security.service.UserService;
 import org.zemo.omninet.security.util.HttpUtils;
@@ -26,9 +30,16 @@ public class AuthController {
 
     private final UserService userService;
     private final AuthenticationService authenticationService;
+    private final AuthAttemptLimiter authAttemptLimiter;
 
     @GetMapping("/user")
-    public ResponseEntity<ApiResponse<User>> getCurrentUser(@AuthenticationPrincipal User user) {
+    public ResponseEntity<ApiResponse<User>> getCurrentUser(@AuthenticationPrincipal User principal) {
+        if (principal == null) {
+            return ResponseEntity.status(401).body(ApiResponse.error("User not authenticated"));
+        }
+
+        // The principal may be built from token claims only, so load the full row before saving it
+        User user = userService.getUserById(principal.getId()).orElse(null);
         if (user == null) {
             return ResponseEntity.status(401).body(ApiResponse.error("User not authenticated"));
         }
@@ -47,6 +58,8 @@ public class AuthController {
         try {
             String userAgent = httpRequest.getHeader("User-Agent");
             String ipAddress = HttpUtils.getClientIpAddress(httpRequest);
+            // Keyed on the connection address: X-Forwarded-For is client-supplied and trivially rotated
+            authAttemptLimiter.checkAndRecord(AuthAttemptLimiter.Scope.LOGIN, httpRequest.getRemoteAddr(), request.getEmail());
 
             ApiResponse<Map<String, Object>> response = authenticationService.authenticateUser(
                     request.getEmail(),
@@ -60,6 +73,8 @@ public class AuthController {
             } else {
                 return ResponseEntity.badRequest().body(response);
             }
+        } catch (TooManyRequestsException e) {
+            return tooManyRequests(e);
         } catch (Exception e) {
             log.error("Error during email login: {}", e.getMessage(), e);
             return ResponseEntity.badRequest().body(
@@ -94,10 +109,13 @@ public class AuthController {
     }
 
     @PostMapping("/logout")
-    public ResponseEntity<ApiResponse<Map<String, Object>>> logout(@RequestBody Map<String, String> request) {
+    public ResponseEntity<ApiResponse<Map<String, Object>>> logout(@RequestBody Map<String, String> request,
+                                                                   HttpServletRequest httpRequest) {
         try {
             String refreshToken = request.get("refreshToken");
-            ApiResponse<Map<String, Object>> response = authenticationService.logout(refreshToken);
+            String authHeader = httpRequest.getHeader("Authorization");
+            String accessToken = authHeader != null && authHeader.startsWith("Bearer ") ? authHeader.substring(7) : null;
+            ApiResponse<Map<String, Object>> response = authenticationService.logout(refreshToken, accessToken);
 
             return ResponseEntity.ok(response);
         } catch (Exception e) {
@@ -150,6 +168,8 @@ public class AuthController {
             } else {
                 return ResponseEntity.badRequest().body(response);
             }
+        } catch (TooManyRequestsException e) {
+            return tooManyRequests(e);
         } catch (Exception e) {
             log.error("Error adding password to account: {}", e.getMessage(), e);
             return ResponseEntity.badRequest().body(
@@ -179,6 +199,8 @@ public class AuthController {
             } else {
                 return ResponseEntity.badRequest().body(response);
             }
+        } catch (TooManyRequestsException e) {
+            return tooManyRequests(e);
         } catch (Exception e) {
             log.error("Error changing password: {}", e.getMessage(), e);
             return ResponseEntity.badRequest().body(
@@ -186,4 +208,10 @@ public class AuthController {
             );
         }
     }
+
+    private <T> ResponseEntity<ApiResponse<T>> tooManyRequests(TooManyRequestsException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(ApiResponse.error(e.getMessage()));
+    }
 }
@@ -1,14 +1,19 @@
 package org.zemo.omninet.security.controller;
 
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 import org.zemo.omninet.security.dto.CompleteRegistrationRequest;
 import org.zemo.omninet.security.dto.EmailRegistrationRequest;
 import org.zemo.omninet.security.dto.OtpVerificationRequest;
+import org.zemo.omninet.security.exception.TooManyRequestsException;
+import org.zemo.omninet.security.service.AuthAttemptLimiter;
 import org.zemo.omninet.security.service.EmailRegistrationService;
 
 import java.util.HashMap;
@@ -23,6 +28,7 @@ import java.util.Map;
 public class EmailRegistrationController {
 
     private final EmailRegistrationService emailRegistrationService;
+    private final AuthAttemptLimiter authAttemptLimiter;
 
     @PostMapping("/register/initiate")
     public ResponseEntity<Map<String, Object>> initiateRegistration(@Valid @RequestBody EmailRegistrationRequest request) {
@@ -39,10 +45,15 @@ public class EmailRegistrationController {
     }
 
     @PostMapping("/register/verify-otp")
-    public ResponseEntity<Map<String, Object>> verifyOtp(@Valid @RequestBody OtpVerificationRequest request) {
+    public ResponseEntity<Map<String, Object>> verifyOtp(@Valid @RequestBody OtpVerificationRequest request,
+                                                         HttpServletRequest httpRequest) {
         try {
+            authAttemptLimiter.checkAndRecord(AuthAttemptLimiter.Scope.OTP,
+                    httpRequest.getRemoteAddr(), request.getEmail());
             Map<String, Object> response = emailRegistrationService.verifyOtp(request.getEmail(), request.getOtp());
             return ResponseEntity.ok(response);
+        } catch (TooManyRequestsException e) {
+            return tooManyRequests(e);
         } catch (Exception e) {
             log.error("Error verifying OTP: {}", e.getMessage(), e);
             Map<String, Object> errorResponse = new HashMap<>();
@@ -64,6 +75,8 @@ public class EmailRegistrationController {
                     true
             );
             return ResponseEntity.ok(response);
+        } catch (TooManyRequestsException e) {
+            return tooManyRequests(e);
         } catch (Exception e) {
             log.error("Error completing registration: {}", e.getMessage(), e);
             Map<String, Object> errorResponse = new HashMap<>();
@@ -103,4 +116,13 @@ public class EmailRegistrationController {
             return ResponseEntity.badRequest().body(errorResponse);
         }
     }
+
+    private ResponseEntity<Map<String, Object>> tooManyRequests(TooManyRequestsException e) {
+        Map<String, Object> errorResponse = new HashMap<>();
+        errorResponse.put("success", false);
+        errorResponse.put("message", e.getMessage());
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(errorResponse);
+    }
 }
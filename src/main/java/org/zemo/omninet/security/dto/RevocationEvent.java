@@ -0,0 +1,25 @@
+package org.zemo.omninet.security.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Broadcast between nodes when access tokens are revoked. TOKEN revokes a single token id
+ * until it expires; USER moves a user's token version forward, invalidating all older tokens.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RevocationEvent {
+
+    private Type type;
+    private String tokenId;
+    private String userId;
+    private int tokenVersion;
+    private long expiresAt;
+
+    public enum Type {
+        TOKEN, USER
+    }
+}
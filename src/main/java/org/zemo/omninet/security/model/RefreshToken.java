@@ -4,6 +4,7 @@ import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.zemo.omninet.security.util.TokenHashUtils;
 
 import java.time.LocalDateTime;
 
@@ -11,15 +12,22 @@ import java.time.LocalDateTime;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "refresh_tokens")
+@Table(name = "refresh_tokens", indexes = {
+        @Index(name = "idx_refresh_tokens_token_hash", columnList = "token_hash", unique = true)
+})
 public class RefreshToken {
     @Id
     @GeneratedValue(strategy = GenerationType.UUID)
     private String id;
 
-    @Column(nullable = false, unique = true, length = 1000)
+    // Raw JWT, only held in memory so it can be returned to the client once
+    @Transient
     private String token;
 
+    // SHA-256 hex of the JWT; the only form persisted and looked up
+    @Column(name = "token_hash", length = 64)
+    private String tokenHash;
+
     @Column(nullable = false)
     private String userId;
 
@@ -37,6 +45,7 @@ public class RefreshToken {
 
     public RefreshToken(String token, String userId, LocalDateTime expiresAt) {
         this.token = token;
+        this.tokenHash = TokenHashUtils.sha256Hex(token);
         this.userId = userId;
         this.createdAt = LocalDateTime.now();
         this.expiresAt = expiresAt;
@@ -38,6 +38,11 @@ public class User {
     @Column(name = "last_login_at")
     private LocalDateTime lastLoginAt;
 
+    // Bumped to invalidate every access token issued before it (logout-all, password change).
+    // Only TokenVersionService's update query writes it, so saving a User loaded before a bump cannot roll it back.
+    @Column(name = "token_version", columnDefinition = "integer default 0", updatable = false)
+    private int tokenVersion = 0;
+
     public User(String id, String email, String name, String provider) {
         this.id = id;
         this.email = email;
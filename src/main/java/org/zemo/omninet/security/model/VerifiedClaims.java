@@ -0,0 +1,31 @@
+package org.zemo.omninet.security.model;
+
+import java.time.Instant;
+
+/**
+ * Immutable view of a JWT whose signature and expiry have already been checked.
+ * Built once per token by {@code JwtService.verify} so callers never re-parse it.
+ */
+public record VerifiedClaims(
+        String tokenId,
+        String userId,
+        String email,
+        String name,
+        String tokenType,
+        int tokenVersion,
+        Instant issuedAt,
+        Instant expiresAt
+) {
+
+    public boolean isAccessToken() {
+        return "access".equals(tokenType);
+    }
+
+    public boolean isRefreshToken() {
+        return "refresh".equals(tokenType);
+    }
+
+    public boolean isExpired() {
+        return expiresAt.isBefore(Instant.now());
+    }
+}
@@ -16,5 +16,7 @@ public interface EmailVerificationRepository extends JpaRepository<EmailVerifica
 
     void deleteByEmailAndExpiresAtBefore(String email, LocalDateTime dateTime);
 
+    void deleteByEmail(String email);
+
     void deleteByExpiresAtBefore(LocalDateTime dateTime);
 }
@@ -10,7 +10,9 @@ import java.util.Optional;
 
 @Repository
 public interface RefreshTokenRepository extends JpaRepository<RefreshToken, String> {
-    Optional<RefreshToken> findByTokenAndRevokedFalse(String token);
+    Optional<RefreshToken> findByTokenHashAndRevokedFalse(String tokenHash);
+
+    Optional<RefreshToken> findFirstByTokenHashAndRevokedTrue(String tokenHash);
 
     List<RefreshToken> findByUserIdAndRevokedFalse(String userId);
 
@@ -0,0 +1,145 @@
+package org.zemo.omninet.security.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.zemo.omninet.security.exception.TooManyRequestsException;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Sliding-window attempt counters for unauthenticated auth endpoints, keyed by client IP and
+ * by email. Each window is split into time buckets; a bucket packs its epoch and count into a
+ * single long so it can be rolled over and incremented with one CAS. Checks run before any
+ * database or BCrypt work so a brute-force burst costs only a map lookup.
+ */
+@Service
+@Slf4j
+public class AuthAttemptLimiter {
+
+    public enum Scope {
+        LOGIN, OTP
+    }
+
+    private static final int COUNT_BITS = 20;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+    private final MeterRegistry meterRegistry;
+    private final int bucketCount;
+    private final long bucketMillis;
+    private final Map<Scope, int[]> limits = new ConcurrentHashMap<>();
+    private final Map<String, SlidingWindow> windows = new ConcurrentHashMap<>();
+
+    public AuthAttemptLimiter(MeterRegistry meterRegistry,
+                              @Value("${auth.attempts.window-seconds:300}") int windowSeconds,
+                              @Value("${auth.attempts.buckets:10}") int buckets,
+                              @Value("${auth.attempts.login.per-ip:50}") int loginPerIp,
+                              @Value("${auth.attempts.login.per-email:10}") int loginPerEmail,
+                              @Value("${auth.attempts.otp.per-ip:30}") int otpPerIp,
+                              @Value("${auth.attempts.otp.per-email:5}") int otpPerEmail) {
+        this.meterRegistry = meterRegistry;
+        this.bucketCount = Math.max(1, buckets);
+        this.bucketMillis = Math.max(1000L, windowSeconds * 1000L / bucketCount);
+        limits.put(Scope.LOGIN, new int[]{loginPerIp, loginPerEmail});
+        limits.put(Scope.OTP, new int[]{otpPerIp, otpPerEmail});
+        Gauge.builder("auth.attempts.tracked.keys", windows, Map::size).register(meterRegistry);
+    }
+
+    /**
+     * Records an attempt for the IP and email, or throws {@link TooManyRequestsException} if
+     * either goes over its limit. The attempt is counted first and the resulting total compared,
+     * so concurrent attempts cannot all pass a check made before any of them was recorded.
+     * Rejected attempts are taken back out so the window keeps sliding.
+     *
+     * @param ipAddress The connection's remote address; never a client-supplied forwarding header.
+     */
+    public void checkAndRecord(Scope scope, String ipAddress, String email) {
+        long epoch = System.currentTimeMillis() / bucketMillis;
+        int[] limit = limits.get(scope);
+
+        String ipKey = ipAddress != null ? scope + "|ip|" + ipAddress : null;
+        String emailKey = email != null ? scope + "|email|" + email.trim().toLowerCase(Locale.ROOT) : null;
+
+        SlidingWindow ipWindow = record(scope, "ip", ipKey, limit[0], epoch, null);
+        record(scope, "email", emailKey, limit[1], epoch, ipWindow);
+    }
+
+    // Counts the attempt and returns its window; over the limit, undoes it (and the undo window's) and throws
+    private SlidingWindow record(Scope scope, String keyType, String key, int limit, long epoch, SlidingWindow undo) {
+        if (key == null || limit <= 0) {
+            return null;
+        }
+        SlidingWindow window = windows.computeIfAbsent(key, k -> new SlidingWindow(bucketCount));
+        if (window.incrementAndSum(epoch) <= limit) {
+            return window;
+        }
+        window.decrement(epoch);
+        if (undo != null) {
+            undo.decrement(epoch);
+        }
+        meterRegistry.counter("auth.attempts.rejected", "scope", scope.name().toLowerCase(Locale.ROOT),
+                "key", keyType).increment();
+        log.warn("Too many {} attempts for {}", scope, key);
+        throw new TooManyRequestsException("Too many attempts, please try again later",
+                Math.max(1, bucketMillis / 1000));
+    }
+
+    // Windows whose buckets have all aged out hold no attempts and can be dropped
+    @Scheduled(fixedRate = 60000)
+    public void evictIdleWindows() {
+        long epoch = System.currentTimeMillis() / bucketMillis;
+        windows.values().removeIf(window -> window.sum(epoch) == 0);
+    }
+
+    private static final class SlidingWindow {
+        private final AtomicLongArray buckets;
+
+        SlidingWindow(int size) {
+            this.buckets = new AtomicLongArray(size);
+        }
+
+        long incrementAndSum(long epoch) {
+            int index = (int) (epoch % buckets.length());
+            while (true) {
+                long current = buckets.get(index);
+                long next = (current >>> COUNT_BITS) == epoch
+                        ? current + ((current & COUNT_MASK) < COUNT_MASK ? 1 : 0)
+                        : (epoch << COUNT_BITS) | 1;
+                if (buckets.compareAndSet(index, current, next)) {
+                    return sum(epoch);
+                }
+            }
+        }
+
+        // Takes back an attempt counted in this epoch; a bucket that has already rolled over is left alone
+        void decrement(long epoch) {
+            int index = (int) (epoch % buckets.length());
+            while (true) {
+                long current = buckets.get(index);
+                if ((current >>> COUNT_BITS) != epoch || (current & COUNT_MASK) == 0) {
+                    return;
+                }
+                if (buckets.compareAndSet(index, current, current - 1)) {
+                    return;
+                }
+            }
+        }
+
+        long sum(long epoch) {
+            long total = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                long value = buckets.get(i);
+                if (epoch - (value >>> COUNT_BITS) < buckets.length()) {
+                    total += value & COUNT_MASK;
+                }
+            }
+            return total;
+        }
+    }
+}
@@ -2,10 +2,10 @@ package org.zemo.omninet.security.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.zemo.omninet.security.dto.ApiResponse;
+import org.zemo.omninet.security.exception.TooManyRequestsException;
 import org.zemo.omninet.security.model.RefreshToken;
 import org.zemo.omninet.security.model.User;
 import org.zemo.omninet.security.repository.UserRepository;
@@ -21,9 +21,10 @@ import java.util.Optional;
 public class AuthenticationService {
 
     private final UserRepository userRepository;
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordHashingService passwordHashingService;
     private final JwtService jwtService;
     private final RefreshTokenService refreshTokenService;
+    private final TokenRevocationService tokenRevocationService;
 
     @Transactional
     public ApiResponse<Map<String, Object>> authenticateUser(String email, String password, String userAgent, String ipAddress) {
@@ -42,7 +43,7 @@ public class AuthenticationService {
                         user.getProvider() + " to sign in, or set up password authentication.");
             }
 
-            if (!passwordEncoder.matches(password, user.getPassword())) {
+            if (!passwordHashingService.matches(password, user.getPassword())) {
                 return ApiResponse.error("Invalid email or password");
             }
 
@@ -65,6 +66,8 @@ public class AuthenticationService {
 
             return ApiResponse.success(responseData, "Authentication successful");
 
+        } catch (TooManyRequestsException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Error during email/password authentication: {}", e.getMessage(), e);
             return ApiResponse.error("Authentication failed");
@@ -114,7 +117,7 @@ public class AuthenticationService {
                 return ApiResponse.error("Account already has password authentication enabled");
             }
 
-            user.setPassword(passwordEncoder.encode(password));
+            user.setPassword(passwordHashingService.encode(password));
 
             String linkedProviders = user.getLinkedProviders();
             if (linkedProviders == null || !linkedProviders.contains("email")) {
@@ -132,6 +135,8 @@ public class AuthenticationService {
 
             return ApiResponse.success(responseData, "Password added to OAuth account");
 
+        } catch (TooManyRequestsException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Error adding password to OAuth account: {}", e.getMessage(), e);
             return ApiResponse.error("Failed to add password authentication");
@@ -160,12 +165,16 @@ public class AuthenticationService {
     }
 
     @Transactional
-    public ApiResponse<Map<String, Object>> logout(String refreshTokenString) {
+    public ApiResponse<Map<String, Object>> logout(String refreshTokenString, String accessTokenString) {
         try {
             if (refreshTokenString != null && !refreshTokenString.trim().isEmpty()) {
                 refreshTokenService.revokeToken(refreshTokenString);
             }
 
+            if (accessTokenString != null && !accessTokenString.trim().isEmpty()) {
+                jwtService.verifyAccessToken(accessTokenString).ifPresent(tokenRevocationService::revokeToken);
+            }
+
             Map<String, Object> responseData = new HashMap<>();
             responseData.put("message", "Logged out successfully");
 
@@ -181,6 +190,8 @@ public class AuthenticationService {
     public ApiResponse<Map<String, Object>> logoutAll(String userId) {
         try {
             refreshTokenService.revokeAllUserTokens(userId);
+            // Invalidate outstanding access tokens on every node as well
+            tokenRevocationService.revokeAllForUser(userId);
 
             Map<String, Object> responseData = new HashMap<>();
             responseData.put("message", "Logged out from all devices successfully");
@@ -206,18 +217,21 @@ public class AuthenticationService {
                 return ApiResponse.error("Password authentication not set up for this account");
             }
 
-            if (!passwordEncoder.matches(currentPassword, user.getPassword())) {
+            if (!passwordHashingService.matches(currentPassword, user.getPassword())) {
                 return ApiResponse.error("Current password is incorrect");
             }
 
-            user.setPassword(passwordEncoder.encode(newPassword));
+            user.setPassword(passwordHashingService.encode(newPassword));
             userRepository.save(user);
+            tokenRevocationService.revokeAllForUser(user.getId());
 
             Map<String, Object> responseData = new HashMap<>();
             responseData.put("message", "Password changed successfully");
 
             return ApiResponse.success(responseData, "Password changed");
 
+        } catch (TooManyRequestsException e) {
+            throw e;
         } catch (Exception e) {
             log.error("Error changing password: {}", e.getMessage(), e);
             return ApiResponse.error("Failed to change password");
@@ -8,8 +8,6 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.context.event.EventListener;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
-import org.zemo.omninet.security.repository.EmailVerificationRepository;
-import org.zemo.omninet.security.repository.PendingUserRepository;
 import org.zemo.omninet.security.repository.RefreshTokenRepository;
 
 import java.time.LocalDateTime;
@@ -19,8 +17,7 @@ import java.time.LocalDateTime;
 @Slf4j
 public class CleanupService {
 
-    private final EmailVerificationRepository emailVerificationRepository;
-    private final PendingUserRepository pendingUserRepository;
+    private final VerificationStore verificationStore;
     private final RefreshTokenRepository refreshTokenRepository;
 
     // Runs once after the application is fully started to avoid race with schema creation
@@ -47,8 +44,8 @@ public class CleanupService {
     protected void performCleanup() {
         LocalDateTime now = LocalDateTime.now();
         try {
-            emailVerificationRepository.deleteByExpiresAtBefore(now);
-            pendingUserRepository.deleteByExpiresAtBefore(now);
+            // No-op for the in-memory store, which expires entries itself
+            verificationStore.purgeExpired();
             refreshTokenRepository.deleteByExpiresAtBeforeOrRevokedTrue(now);
             log.info("Cleaned up expired verification, pending user and refresh token records");
         } catch (InvalidDataAccessResourceUsageException ex) {
@@ -2,15 +2,12 @@ package org.zemo.omninet.security.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.zemo.omninet.notes.exception.SuccessException;
 import org.zemo.omninet.security.model.EmailVerification;
 import org.zemo.omninet.security.model.PendingUser;
 import org.zemo.omninet.security.model.User;
-import org.zemo.omninet.security.repository.EmailVerificationRepository;
-import org.zemo.omninet.security.repository.PendingUserRepository;
 import org.zemo.omninet.security.repository.UserRepository;
 
 import java.security.SecureRandom;
@@ -25,18 +22,17 @@ import java.util.UUID;
 @Slf4j
 public class EmailRegistrationService {
 
-    private final EmailVerificationRepository emailVerificationRepository;
-    private final PendingUserRepository pendingUserRepository;
+    private final VerificationStore verificationStore;
     private final UserRepository userRepository;
     private final EmailService emailService;
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordHashingService passwordHashingService;
     private final SecureRandom secureRandom = new SecureRandom();
 
     @Transactional
     public Map<String, Object> initiateEmailRegistration(String email) {
         log.info("Initiating email registration for: {}", email);
 
-        cleanupExpiredRecords(email);
+        verificationStore.clear(email);
 
         Optional<User> existingUser = userRepository.findByEmail(email);
         if (existingUser.isPresent()) {
@@ -52,7 +48,7 @@ public class EmailRegistrationService {
         String otp = generateOtp();
 
         EmailVerification verification = new EmailVerification(email, otp, 15); // 15 minutes validity
-        emailVerificationRepository.save(verification);
+        verificationStore.saveOtp(verification);
 
         emailService.sendOtpEmail(email, otp);
 
@@ -68,25 +64,13 @@ public class EmailRegistrationService {
     public Map<String, Object> verifyOtp(String email, String otp) {
         log.info("Verifying OTP for email: {}", email);
 
-        Optional<EmailVerification> verificationOpt = emailVerificationRepository
-                .findByEmailAndOtpAndVerifiedFalseAndUsedFalse(email, otp);
-
-        if (verificationOpt.isEmpty()) {
-            throw new RuntimeException("Invalid or expired verification code");
-        }
-
-        EmailVerification verification = verificationOpt.get();
-
-        verification.setAttemptCount(verification.getAttemptCount() + 1);
-
-        if (!verification.isValid()) {
-            emailVerificationRepository.save(verification);
+        VerificationStore.OtpCheck check = verificationStore.verifyOtp(email, otp);
+        if (check == VerificationStore.OtpCheck.EXHAUSTED) {
             throw new RuntimeException("Verification code has expired or maximum attempts exceeded");
         }
-
-        verification.setVerified(true);
-        verification.setUsed(true);
-        emailVerificationRepository.save(verification);
+        if (check != VerificationStore.OtpCheck.VERIFIED) {
+            throw new RuntimeException("Invalid or expired verification code");
+        }
 
         String verificationToken = UUID.randomUUID().toString();
 
@@ -114,7 +98,7 @@ public class EmailRegistrationService {
         pendingUser.setEmailVerified(true);
         pendingUser.setCreatedAt(LocalDateTime.now());
         pendingUser.setExpiresAt(LocalDateTime.now().plusHours(24));
-        pendingUserRepository.save(pendingUser);
+        verificationStore.savePendingUser(pendingUser);
 
         return response;
     }
@@ -124,8 +108,25 @@ public class EmailRegistrationService {
                                                     String verificationToken, boolean confirmMerge) {
         log.info("Completing registration for email: {}", email);
 
-        Optional<PendingUser> pendingUserOpt = pendingUserRepository.findByVerificationToken(verificationToken);
-        if (pendingUserOpt.isEmpty() || !pendingUserOpt.get().getEmail().equals(email)) {
+        if (password == null || password.trim().isEmpty()) {
+            throw new RuntimeException("Password is required for all registrations");
+        }
+
+        // Checked before hashing so a made-up token never costs a BCrypt round
+        Optional<PendingUser> peeked = verificationStore.peekPendingUser(verificationToken, email);
+        if (peeked.isEmpty()) {
+            throw new RuntimeException("Invalid verification token");
+        }
+        if (peeked.get().isExpired() || !peeked.get().isEmailVerified()) {
+            throw new RuntimeException("Verification token has expired");
+        }
+
+        // Hashed before the token is consumed, so a saturated or failing hashing pool leaves the registration intact
+        String hashedPassword = passwordHashingService.encode(password);
+
+        // Consuming the token before the user is saved means two concurrent completions cannot both succeed
+        Optional<PendingUser> pendingUserOpt = verificationStore.consumePendingUser(verificationToken, email);
+        if (pendingUserOpt.isEmpty()) {
             throw new RuntimeException("Invalid verification token");
         }
 
@@ -134,10 +135,6 @@ public class EmailRegistrationService {
             throw new RuntimeException("Verification token has expired");
         }
 
-        if (password == null || password.trim().isEmpty()) {
-            throw new RuntimeException("Password is required for all registrations");
-        }
-
         Optional<User> existingUserOpt = userRepository.findByEmail(email);
 
         if (existingUserOpt.isPresent()) {
@@ -147,19 +144,16 @@ public class EmailRegistrationService {
             }
 
             log.info("Automatically merging email authentication with existing OAuth account: {}", email);
-            return mergeWithOAuthAccount(existingUser, name, password, pendingUser);
+            return mergeWithOAuthAccount(existingUser, name, hashedPassword);
         } else {
-            return createNewEmailUser(email, name, password, pendingUser);
+            return createNewEmailUser(email, name, hashedPassword);
         }
     }
 
-    private Map<String, Object> createNewEmailUser(String email, String name, String password, PendingUser pendingUser) {
-        String hashedPassword = passwordEncoder.encode(password);
+    private Map<String, Object> createNewEmailUser(String email, String name, String hashedPassword) {
         User user = new User(email, name, hashedPassword);
         user = userRepository.save(user);
 
-        pendingUserRepository.delete(pendingUser);
-
         emailService.sendWelcomeEmail(email, name);
 
         Map<String, Object> response = new HashMap<>();
@@ -172,8 +166,8 @@ public class EmailRegistrationService {
         return response;
     }
 
-    private Map<String, Object> mergeWithOAuthAccount(User existingUser, String name, String password, PendingUser pendingUser) {
-        existingUser.setPassword(passwordEncoder.encode(password));
+    private Map<String, Object> mergeWithOAuthAccount(User existingUser, String name, String hashedPassword) {
+        existingUser.setPassword(hashedPassword);
 
         if (name != null && !name.trim().isEmpty() && !name.equals(existingUser.getName())) {
             existingUser.setName(name);
@@ -190,8 +184,6 @@ public class EmailRegistrationService {
 
         existingUser = userRepository.save(existingUser);
 
-        pendingUserRepository.delete(pendingUser);
-
         emailService.sendAccountMergeNotification(existingUser.getEmail(), existingUser.getName(), "email");
 
         Map<String, Object> response = new HashMap<>();
@@ -209,17 +201,8 @@ public class EmailRegistrationService {
         return String.format("%06d", secureRandom.nextInt(1000000));
     }
 
-    private void cleanupExpiredRecords(String email) {
-        LocalDateTime now = LocalDateTime.now();
-        emailVerificationRepository.deleteByEmailAndExpiresAtBefore(email, now);
-        pendingUserRepository.deleteByEmail(email);
-    }
-
-    @Transactional
     public void cleanupExpiredRecords() {
-        LocalDateTime now = LocalDateTime.now();
-        emailVerificationRepository.deleteByExpiresAtBefore(now);
-        pendingUserRepository.deleteByExpiresAtBefore(now);
+        verificationStore.purgeExpired();
         log.info("Cleaned up expired verification records");
     }
 }
@@ -2,77 +2,19 @@ package org.zemo.omninet.security.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.stereotype.Service;
-
-import jakarta.mail.internet.MimeMessage;
+import org.zemo.omninet.security.util.HtmlTemplate;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class EmailService {
 
-    private final JavaMailSender mailSender;
-
-    public void sendOtpEmail(String to, String otp) {
-        try {
-            String subject = "OmniNet - Email Verification Code";
-            String content = buildOtpEmailContent(otp);
-
-            sendHtmlEmail(to, subject, content);
-
-            log.info("OTP email sent successfully to: {}", to);
-        } catch (Exception e) {
-            log.error("Failed to send OTP email to: {}", to, e);
-            throw new RuntimeException("Failed to send verification email", e);
-        }
-    }
-
-    public void sendWelcomeEmail(String to, String name) {
-        try {
-            String subject = "Welcome to OmniNet";
-            String content = buildWelcomeEmailContent(name);
-
-            sendHtmlEmail(to, subject, content);
-
-            log.info("Welcome email sent successfully to: {}", to);
-        } catch (Exception e) {
-            log.error("Failed to send welcome email to: {}", to, e);
-        }
-    }
-
-    public void sendAccountMergeNotification(String to, String name, String newProvider) {
-        try {
-            String subject = "OmniNet - Account Merged";
-            String content = buildAccountMergeEmailContent(name, newProvider);
+    private final MailDispatcher mailDispatcher;
 
-            sendHtmlEmail(to, subject, content);
-
-            log.info("Account merge notification sent successfully to: {}", to);
-        } catch (Exception e) {
-            log.error("Failed to send account merge notification to: {}", to, e);
-        }
-    }
-
-    public void sendHtmlEmail(String to, String subject, String htmlContent) {
-        try {
-            MimeMessage mimeMessage = mailSender.createMimeMessage();
-            MimeMessageHelper helper = new MimeMessageHelper(mimeMessage, "UTF-8");
-            helper.setTo(to);
-            helper.setSubject(subject);
-            helper.setText(htmlContent, true); // true = isHtml
-            helper.setFrom("noreply@omninet.com");
-
-            mailSender.send(mimeMessage);
-        } catch (Exception e) {
-            log.error("Failed to send HTML email to: {}", to, e);
-            throw new RuntimeException("Failed to send HTML email", e);
-        }
-    }
-
-    private String buildOtpEmailContent(String otp) {
-        return String.format("""
+    // Compiled once; each email only fills in the placeholders
+    private static final HtmlTemplate OTP_TEMPLATE = HtmlTemplate.compile("""
             <!DOCTYPE html>
             <html lang="en">
             <head>
@@ -82,7 +24,7 @@ public class EmailService {
                 <style>
                     body {
                         font-family: 'Segoe UI', Arial, sans-serif;
-                        background: linear-gradient(120deg, #4CAF50 0%%, #2E7D32 100%%);
+                        background: linear-gradient(120deg, #4CAF50 0%, #2E7D32 100%);
                         margin: 0;
                         padding: 0;
                         min-height: 100vh;
@@ -173,7 +115,7 @@ public class EmailService {
                         <p>Hello,</p>
                         <p>Your <strong>OmniNet</strong> verification code is:</p>
                     </div>
-                    <div class="otp-box">%s</div>
+                    <div class="otp-box">{{otp}}</div>
                     <div class="message">
                         <p>This code will expire in <strong>15 minutes</strong>. Please do not share this code with anyone.</p>
                         <p>If you didn't request this verification code, you can safely ignore this email.</p>
@@ -188,11 +130,9 @@ public class EmailService {
                 </div>
             </body>
             </html>
-            """, otp);
-    }
+            """, "otp");
 
-    private String buildWelcomeEmailContent(String name) {
-        return String.format("""
+    private static final HtmlTemplate WELCOME_TEMPLATE = HtmlTemplate.compile("""
             <!DOCTYPE html>
             <html lang="en">
             <head>
@@ -202,7 +142,7 @@ public class EmailService {
                 <style>
                     body {
                         font-family: 'Segoe UI', Arial, sans-serif;
-                        background: linear-gradient(120deg, #43A047 0%%, #388E3C 100%%);
+                        background: linear-gradient(120deg, #43A047 0%, #388E3C 100%);
                         margin: 0;
                         padding: 0;
                         min-height: 100vh;
@@ -288,7 +228,7 @@ public class EmailService {
                         <h1>Team Zemo | OmniNet</h1>
                     </div>
                     <div class="welcome-banner">
-                        🎉 Welcome to OmniNet, %s! 🎉
+                        🎉 Welcome to OmniNet, {{name}}! 🎉
                     </div>
                     <div class="message">
                         <p>We’re excited to have you onboard! Your account has been successfully created.</p>
@@ -305,11 +245,9 @@ public class EmailService {
                 </div>
             </body>
             </html>
-            """, name);
-    }
+            """, "name");
 
-    private String buildAccountMergeEmailContent(String name, String newProvider) {
-        return String.format("""
+    private static final HtmlTemplate ACCOUNT_MERGE_TEMPLATE = HtmlTemplate.compile("""
             <!DOCTYPE html>
             <html lang="en">
             <head>
@@ -319,7 +257,7 @@ public class EmailService {
                 <style>
                     body {
                         font-family: 'Segoe UI', Arial, sans-serif;
-                        background: linear-gradient(120deg, #1DE9B6 0%%, #00BFAE 100%%);
+                        background: linear-gradient(120deg, #1DE9B6 0%, #00BFAE 100%);
                         margin: 0;
                         padding: 0;
                         min-height: 100vh;
@@ -412,8 +350,8 @@ public class EmailService {
                         🔗 Accounts Successfully Merged!
                     </div>
                     <div class="message">
-                        <p>Hello %s,</p>
-                        <p>Your <strong>OmniNet</strong> account has been successfully merged with your <span class="highlight">%s</span> account.</p>
+                        <p>Hello {{name}},</p>
+                        <p>Your <strong>OmniNet</strong> account has been successfully merged with your <span class="highlight">{{newProvider}}</span> account.</p>
                         <p>You can now use either authentication method to access your account securely.</p>
                         <p>If you didn’t initiate this merge, please <a href="https://github.com/Team-Zemo" style="color:#00BFAE; font-weight:bold;">contact our support team</a> immediately.</p>
                     </div>
@@ -427,6 +365,70 @@ public class EmailService {
                 </div>
             </body>
             </html>
-            """, name, newProvider);
+            """, "name", "newProvider");
+
+    public void sendOtpEmail(String to, String otp) {
+        try {
+            String subject = "OmniNet - Email Verification Code";
+            String content = buildOtpEmailContent(otp);
+
+            if (!sendHtmlEmail(to, subject, content, MailDispatcher.Priority.HIGH)) {
+                throw new IllegalStateException("Mail queue is full");
+            }
+
+            log.info("OTP email queued for: {}", to);
+        } catch (Exception e) {
+            log.error("Failed to send OTP email to: {}", to, e);
+            throw new RuntimeException("Failed to send verification email", e);
+        }
+    }
+
+    public void sendWelcomeEmail(String to, String name) {
+        try {
+            String subject = "Welcome to OmniNet";
+            String content = buildWelcomeEmailContent(name);
+
+            sendHtmlEmail(to, subject, content, MailDispatcher.Priority.NORMAL);
+
+            log.info("Welcome email queued for: {}", to);
+        } catch (Exception e) {
+            log.error("Failed to send welcome email to: {}", to, e);
+        }
+    }
+
+    public void sendAccountMergeNotification(String to, String name, String newProvider) {
+        try {
+            String subject = "OmniNet - Account Merged";
+            String content = buildAccountMergeEmailContent(name, newProvider);
+
+            sendHtmlEmail(to, subject, content, MailDispatcher.Priority.NORMAL);
+
+            log.info("Account merge notification queued for: {}", to);
+        } catch (Exception e) {
+            log.error("Failed to send account merge notification to: {}", to, e);
+        }
+    }
+
+    // Queues the message; SMTP happens on the dispatcher so callers never wait on the mail server
+    public boolean sendHtmlEmail(String to, String subject, String htmlContent, MailDispatcher.Priority priority) {
+        return mailDispatcher.dispatch(priority, subject + " to " + to, mimeMessage -> {
+            MimeMessageHelper helper = new MimeMessageHelper(mimeMessage, "UTF-8");
+            helper.setTo(to);
+            helper.setSubject(subject);
+            helper.setText(htmlContent, true); // true = isHtml
+            helper.setFrom("noreply@omninet.com");
+        });
+    }
+
+    private String buildOtpEmailContent(String otp) {
+        return OTP_TEMPLATE.render(otp);
+    }
+
+    private String buildWelcomeEmailContent(String name) {
+        return WELCOME_TEMPLATE.render(name);
+    }
+
+    private String buildAccountMergeEmailContent(String name, String newProvider) {
+        return ACCOUNT_MERGE_TEMPLATE.render(name, newProvider);
     }
 }
\ No newline at end of file
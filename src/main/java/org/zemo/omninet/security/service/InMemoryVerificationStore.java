@@ -0,0 +1,178 @@
+package org.zemo.omninet.security.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.zemo.omninet.security.model.EmailVerification;
+import org.zemo.omninet.security.model.PendingUser;
+import org.zemo.omninet.security.util.ExpiryWheel;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Node-local {@link VerificationStore}: OTPs and pending users live in concurrent maps and are
+ * expired by an {@link ExpiryWheel}, so issuing and verifying a code never touches the database.
+ * Only use it when every registration request for an email reaches the same instance.
+ */
+@Service
+@ConditionalOnProperty(name = "auth.verification-store", havingValue = "memory")
+@Slf4j
+public class InMemoryVerificationStore implements VerificationStore {
+
+    private final int maxAttempts;
+    private final ExpiryWheel wheel;
+
+    private final Map<String, OtpEntry> otps = new ConcurrentHashMap<>();
+    private final Map<String, PendingUser> pendingByToken = new ConcurrentHashMap<>();
+    private final Map<String, String> pendingTokenByEmail = new ConcurrentHashMap<>();
+
+    private static final class OtpEntry {
+        final byte[] otp;
+        final long expiresAtMillis;
+        final AtomicInteger attempts = new AtomicInteger();
+        final AtomicBoolean consumed = new AtomicBoolean();
+
+        OtpEntry(String otp, long expiresAtMillis) {
+            this.otp = otp.getBytes(StandardCharsets.UTF_8);
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+
+    public InMemoryVerificationStore(MeterRegistry meterRegistry,
+                                     @Value("${auth.otp.max-attempts:3}") int maxAttempts,
+                                     @Value("${auth.verification-store.wheel-slots:512}") int wheelSlots,
+                                     @Value("${auth.verification-store.tick-ms:1000}") long tickMs) {
+        this.maxAttempts = maxAttempts;
+        this.wheel = new ExpiryWheel(wheelSlots, tickMs);
+        Gauge.builder("auth.verification.otps", otps, Map::size).register(meterRegistry);
+        Gauge.builder("auth.verification.pending.users", pendingByToken, Map::size).register(meterRegistry);
+    }
+
+    @Override
+    public void saveOtp(EmailVerification verification) {
+        OtpEntry entry = new OtpEntry(verification.getOtp(), toMillis(verification));
+        otps.put(verification.getEmail(), entry);
+        wheel.schedule(entry.expiresAtMillis, () -> otps.remove(verification.getEmail(), entry));
+    }
+
+    @Override
+    public OtpCheck verifyOtp(String email, String otp) {
+        OtpEntry entry = otps.get(email);
+        if (entry == null || otp == null) {
+            return OtpCheck.INVALID;
+        }
+
+        if (System.currentTimeMillis() >= entry.expiresAtMillis || entry.attempts.incrementAndGet() > maxAttempts) {
+            otps.remove(email, entry);
+            return OtpCheck.EXHAUSTED;
+        }
+
+        if (!MessageDigest.isEqual(entry.otp, otp.getBytes(StandardCharsets.UTF_8))) {
+            return OtpCheck.INVALID;
+        }
+
+        if (!entry.consumed.compareAndSet(false, true)) {
+            return OtpCheck.INVALID;
+        }
+        otps.remove(email, entry);
+        return OtpCheck.VERIFIED;
+    }
+
+    @Override
+    public void savePendingUser(PendingUser pendingUser) {
+        String token = pendingUser.getVerificationToken();
+        String previous = pendingTokenByEmail.put(pendingUser.getEmail(), token);
+        if (previous != null) {
+            pendingByToken.remove(previous);
+        }
+        pendingByToken.put(token, pendingUser);
+
+        long expiresAt = pendingUser.getExpiresAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        wheel.schedule(expiresAt, () -> removePending(token, pendingUser));
+    }
+
+    @Override
+    public Optional<PendingUser> peekPendingUser(String verificationToken, String email) {
+        PendingUser pendingUser = pendingByToken.get(verificationToken);
+        return pendingUser != null && pendingUser.getEmail().equals(email) ? Optional.of(pendingUser) : Optional.empty();
+    }
+
+    @Override
+    public Optional<PendingUser> consumePendingUser(String verificationToken, String email) {
+        PendingUser pendingUser = pendingByToken.get(verificationToken);
+        if (pendingUser == null || !pendingUser.getEmail().equals(email)) {
+            return Optional.empty();
+        }
+        if (!removePending(verificationToken, pendingUser)) {
+            return Optional.empty();
+        }
+        // The maps are not rolled back with the caller's transaction, so a failed registration puts it back
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        restorePending(verificationToken, pendingUser);
+                    }
+                }
+            });
+        }
+        return Optional.of(pendingUser);
+    }
+
+    @Override
+    public void clear(String email) {
+        otps.remove(email);
+        String token = pendingTokenByEmail.remove(email);
+        if (token != null) {
+            pendingByToken.remove(token);
+        }
+    }
+
+    // Expiry is handled by the wheel; nothing is left for the periodic cleanup job
+    @Override
+    public void purgeExpired() {
+    }
+
+    @Scheduled(fixedRateString = "${auth.verification-store.tick-ms:1000}")
+    public void advanceWheel() {
+        int expired = wheel.advance(System.currentTimeMillis());
+        if (expired > 0) {
+            log.debug("Expired {} verification entries", expired);
+        }
+    }
+
+    private boolean removePending(String token, PendingUser pendingUser) {
+        if (!pendingByToken.remove(token, pendingUser)) {
+            return false;
+        }
+        pendingTokenByEmail.remove(pendingUser.getEmail(), token);
+        return true;
+    }
+
+    // Skipped if it has expired or a new registration for the email started in the meantime
+    private void restorePending(String token, PendingUser pendingUser) {
+        if (pendingUser.isExpired() || pendingTokenByEmail.putIfAbsent(pendingUser.getEmail(), token) != null) {
+            return;
+        }
+        pendingByToken.put(token, pendingUser);
+        log.debug("Restored pending registration for {} after a failed completion", pendingUser.getEmail());
+    }
+
+    private static long toMillis(EmailVerification verification) {
+        return verification.getExpiresAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,105 @@
+package org.zemo.omninet.security.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.zemo.omninet.security.model.EmailVerification;
+import org.zemo.omninet.security.model.PendingUser;
+import org.zemo.omninet.security.repository.EmailVerificationRepository;
+import org.zemo.omninet.security.repository.PendingUserRepository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Default {@link VerificationStore}: database-backed and shared by every node, so a code issued
+ * by one instance can be verified on any other.
+ */
+@Service
+@ConditionalOnProperty(name = "auth.verification-store", havingValue = "jpa", matchIfMissing = true)
+@RequiredArgsConstructor
+public class JpaVerificationStore implements VerificationStore {
+
+    private final EmailVerificationRepository emailVerificationRepository;
+    private final PendingUserRepository pendingUserRepository;
+
+    @Value("${auth.otp.max-attempts:3}")
+    private int maxAttempts;
+
+    @Override
+    @Transactional
+    public void saveOtp(EmailVerification verification) {
+        emailVerificationRepository.save(verification);
+    }
+
+    @Override
+    @Transactional
+    public OtpCheck verifyOtp(String email, String otp) {
+        List<EmailVerification> outstanding = emailVerificationRepository.findByEmailAndVerifiedFalseAndUsedFalse(email);
+        if (outstanding.isEmpty()) {
+            return OtpCheck.INVALID;
+        }
+
+        boolean verified = false;
+        boolean anyUsable = false;
+        for (EmailVerification verification : outstanding) {
+            verification.setAttemptCount(verification.getAttemptCount() + 1);
+            if (verification.isExpired() || verification.getAttemptCount() > maxAttempts) {
+                continue;
+            }
+            anyUsable = true;
+            if (!verified && verification.getOtp().equals(otp)) {
+                verification.setVerified(true);
+                verification.setUsed(true);
+                verified = true;
+            }
+        }
+        emailVerificationRepository.saveAll(outstanding);
+
+        if (verified) {
+            return OtpCheck.VERIFIED;
+        }
+        return anyUsable ? OtpCheck.INVALID : OtpCheck.EXHAUSTED;
+    }
+
+    @Override
+    @Transactional
+    public void savePendingUser(PendingUser pendingUser) {
+        pendingUserRepository.deleteByEmail(pendingUser.getEmail());
+        pendingUserRepository.save(pendingUser);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<PendingUser> peekPendingUser(String verificationToken, String email) {
+        return pendingUserRepository.findByVerificationToken(verificationToken)
+                .filter(p -> p.getEmail().equals(email));
+    }
+
+    @Override
+    @Transactional
+    public Optional<PendingUser> consumePendingUser(String verificationToken, String email) {
+        Optional<PendingUser> pendingUser = pendingUserRepository.findByVerificationToken(verificationToken)
+                .filter(p -> p.getEmail().equals(email));
+        pendingUser.ifPresent(pendingUserRepository::delete);
+        return pendingUser;
+    }
+
+    @Override
+    @Transactional
+    public void clear(String email) {
+        emailVerificationRepository.deleteByEmail(email);
+        pendingUserRepository.deleteByEmail(email);
+    }
+
+    @Override
+    @Transactional
+    public void purgeExpired() {
+        LocalDateTime now = LocalDateTime.now();
+        emailVerificationRepository.deleteByExpiresAtBefore(now);
+        pendingUserRepository.deleteByExpiresAtBefore(now);
+    }
+}
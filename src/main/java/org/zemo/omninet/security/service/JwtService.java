@@ -2,11 +2,15 @@ package org.zemo.omninet.security.service;
 
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.zemo.omninet.security.model.User;
+import org.zemo.omninet.security.model.VerifiedClaims;
+import org.zemo.omninet.security.util.TokenHashUtils;
 
 import javax.crypto.SecretKey;
 import java.time.Instant;
@@ -14,6 +18,9 @@ import java.time.temporal.ChronoUnit;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 @Slf4j
@@ -33,8 +40,26 @@ public class JwtService {
     @Value("${jwt.issuer}")
     private String issuer;
 
+    @Value("${jwt.verified-cache.max-size:10000}")
+    private int verifiedCacheMaxSize;
+
+    // Key and parser are immutable and thread-safe, so they are derived once
+    private SecretKey signingKey;
+    private JwtParser parser;
+
+    // Verified claims keyed by SHA-256 of the token, kept until the token expires
+    private final Map<String, VerifiedClaims> verifiedCache = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void init() {
+        this.signingKey = Keys.hmacShaKeyFor(secretKey.getBytes());
+        this.parser = Jwts.parser()
+                .verifyWith(signingKey)
+                .build();
+    }
+
     private SecretKey getSigningKey() {
-        return Keys.hmacShaKeyFor(secretKey.getBytes());
+        return signingKey;
     }
 
     public String generateAccessToken(User user) {
@@ -43,9 +68,11 @@ public class JwtService {
         claims.put("email", user.getEmail());
         claims.put("name", user.getName());
         claims.put("tokenType", "access");
+        claims.put("ver", user.getTokenVersion());
 
         return Jwts.builder()
                 .claims(claims)
+                .id(UUID.randomUUID().toString())
                 .subject(user.getId())
                 .issuer(issuer)
                 .issuedAt(new Date())
@@ -72,9 +99,7 @@ public class JwtService {
 
     public Claims validateToken(String token) {
         try {
-            return Jwts.parser()
-                    .verifyWith(getSigningKey())
-                    .build()
+            return parser
                     .parseSignedClaims(token)
                     .getPayload();
         } catch (ExpiredJwtException e) {
@@ -95,15 +120,71 @@ public class JwtService {
         }
     }
 
-    public boolean isTokenValid(String token) {
+    /**
+     * Verifies the token once and returns its claims, or empty if the token is invalid or expired.
+     * Repeat calls for the same token are served from the cache without re-checking the signature.
+     */
+    public Optional<VerifiedClaims> verify(String token) {
+        if (token == null || token.isBlank()) {
+            return Optional.empty();
+        }
+
+        String key = TokenHashUtils.sha256Hex(token);
+        VerifiedClaims cached = verifiedCache.get(key);
+        if (cached != null) {
+            if (!cached.isExpired()) {
+                return Optional.of(cached);
+            }
+            verifiedCache.remove(key);
+            return Optional.empty();
+        }
+
         try {
             Claims claims = validateToken(token);
-            return !isTokenExpired(claims);
+            Integer version = claims.get("ver", Integer.class);
+            VerifiedClaims verified = new VerifiedClaims(
+                    claims.getId(),
+                    claims.getSubject(),
+                    claims.get("email", String.class),
+                    claims.get("name", String.class),
+                    claims.get("tokenType", String.class),
+                    version != null ? version : 0,
+                    claims.getIssuedAt() != null ? claims.getIssuedAt().toInstant() : null,
+                    claims.getExpiration().toInstant()
+            );
+            if (verified.isExpired()) {
+                return Optional.empty();
+            }
+            cacheVerified(key, verified);
+            return Optional.of(verified);
         } catch (Exception e) {
-            return false;
+            return Optional.empty();
         }
     }
 
+    public Optional<VerifiedClaims> verifyAccessToken(String token) {
+        return verify(token).filter(VerifiedClaims::isAccessToken);
+    }
+
+    private void cacheVerified(String key, VerifiedClaims verified) {
+        if (verifiedCache.size() >= verifiedCacheMaxSize) {
+            verifiedCache.values().removeIf(VerifiedClaims::isExpired);
+            if (verifiedCache.size() >= verifiedCacheMaxSize) {
+                verifiedCache.clear();
+            }
+        }
+        verifiedCache.put(key, verified);
+    }
+
+    @Scheduled(fixedRate = 300000) // 5 minutes
+    public void evictExpiredClaims() {
+        verifiedCache.values().removeIf(VerifiedClaims::isExpired);
+    }
+
+    public boolean isTokenValid(String token) {
+        return verify(token).isPresent();
+    }
+
     public boolean isTokenExpired(Claims claims) {
         return claims.getExpiration().before(new Date());
     }
@@ -124,11 +205,11 @@ public class JwtService {
     }
 
     public boolean isAccessToken(String token) {
-        return "access".equals(getTokenTypeFromToken(token));
+        return verify(token).map(VerifiedClaims::isAccessToken).orElse(false);
     }
 
     public boolean isRefreshToken(String token) {
-        return "refresh".equals(getTokenTypeFromToken(token));
+        return verify(token).map(VerifiedClaims::isRefreshToken).orElse(false);
     }
 
 }
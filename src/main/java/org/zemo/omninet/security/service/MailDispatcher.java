@@ -0,0 +1,263 @@
+package org.zemo.omninet.security.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.Session;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.MimeMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.mail.javamail.MimeMessagePreparator;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends mail off the request path. Messages wait in a bounded priority queue (OTP codes ahead of
+ * notifications ahead of reminders) and are sent by a few workers that each keep their own SMTP
+ * connection open between messages. Failed sends are retried with exponential backoff. Callers
+ * that need to know when a message has actually gone out use {@link #submit}.
+ */
+@Service
+@Slf4j
+public class MailDispatcher {
+
+    public enum Priority {
+        HIGH, NORMAL, LOW
+    }
+
+    private record MailJob(Priority priority, long sequence, String description,
+                           MimeMessagePreparator preparator, int attempt, CompletableFuture<Void> result) {
+    }
+
+    private final JavaMailSender mailSender;
+    private final MeterRegistry meterRegistry;
+    private final int capacity;
+    private final int maxAttempts;
+    private final long backoffMs;
+    private final long idleCloseMs;
+
+    private final PriorityBlockingQueue<MailJob> queue = new PriorityBlockingQueue<>(64,
+            Comparator.comparing(MailJob::priority).thenComparingLong(MailJob::sequence));
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong sequence = new AtomicLong();
+    private final ScheduledExecutorService retryScheduler;
+    private final List<Thread> workers = new ArrayList<>();
+    // Results of queued and retrying messages, cancelled on shutdown so no caller waits forever
+    private final Set<CompletableFuture<Void>> pending = ConcurrentHashMap.newKeySet();
+    private final Timer sendTimer;
+    private volatile boolean running = true;
+
+    public MailDispatcher(JavaMailSender mailSender,
+                          MeterRegistry meterRegistry,
+                          @Value("${mail.dispatch.workers:2}") int workerCount,
+                          @Value("${mail.dispatch.queue-capacity:10000}") int capacity,
+                          @Value("${mail.dispatch.max-attempts:4}") int maxAttempts,
+                          @Value("${mail.dispatch.backoff-ms:2000}") long backoffMs,
+                          @Value("${mail.dispatch.idle-close-ms:30000}") long idleCloseMs) {
+        this.mailSender = mailSender;
+        this.meterRegistry = meterRegistry;
+        this.capacity = capacity;
+        this.maxAttempts = maxAttempts;
+        this.backoffMs = backoffMs;
+        this.idleCloseMs = idleCloseMs;
+
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "mail-retry");
+            t.setDaemon(true);
+            return t;
+        });
+        this.sendTimer = Timer.builder("mail.dispatch.send").register(meterRegistry);
+        Gauge.builder("mail.dispatch.queue.depth", queued, AtomicInteger::get).register(meterRegistry);
+
+        for (int i = 0; i < Math.max(1, workerCount); i++) {
+            Thread worker = new Thread(this::runWorker, "mail-dispatch-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+        log.info("Mail dispatcher started with {} workers and queue capacity {}", workers.size(), capacity);
+    }
+
+    /**
+     * Queues a message for sending, once the surrounding transaction commits if there is one.
+     * Returns false without queueing when the dispatcher is full, so callers that must not lose
+     * the message can fail the request instead.
+     */
+    public boolean dispatch(Priority priority, String description, MimeMessagePreparator preparator) {
+        return enqueue(priority, description, preparator) != null;
+    }
+
+    /**
+     * Queues a message and returns a future that completes once it has been sent. It fails if the
+     * queue is full or every attempt failed, and is cancelled if the dispatcher stops first.
+     */
+    public CompletableFuture<Void> submit(Priority priority, String description, MimeMessagePreparator preparator) {
+        CompletableFuture<Void> result = enqueue(priority, description, preparator);
+        return result != null ? result
+                : CompletableFuture.failedFuture(new RejectedExecutionException("Mail queue is full"));
+    }
+
+    private CompletableFuture<Void> enqueue(Priority priority, String description, MimeMessagePreparator preparator) {
+        if (queued.incrementAndGet() > capacity) {
+            queued.decrementAndGet();
+            count("mail.dispatch.rejected", priority);
+            log.warn("Mail queue full, rejecting {}", description);
+            return null;
+        }
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        pending.add(result);
+        result.whenComplete((ignored, e) -> pending.remove(result));
+        MailJob job = new MailJob(priority, sequence.getAndIncrement(), description, preparator, 1, result);
+
+        // Inside a transaction the slot is held now but the mail only goes out once it commits,
+        // so an OTP or welcome mail is never sent for a registration that rolled back
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    queue.add(job);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        queued.decrementAndGet();
+                        result.cancel(false);
+                        log.debug("Discarded {} after its transaction rolled back", description);
+                    }
+                }
+            });
+        } else {
+            queue.add(job);
+        }
+        return result;
+    }
+
+    public int getQueueDepth() {
+        return queued.get();
+    }
+
+    private void runWorker() {
+        Transport transport = null;
+        while (running) {
+            MailJob job;
+            try {
+                job = queue.poll(idleCloseMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (job == null) {
+                // Idle: release the SMTP connection until there is work again
+                transport = close(transport);
+                continue;
+            }
+            queued.decrementAndGet();
+
+            long start = System.nanoTime();
+            try {
+                transport = send(job, transport);
+                job.result().complete(null);
+                count("mail.dispatch.sent", job.priority());
+                log.debug("Sent {}", job.description());
+            } catch (Exception e) {
+                transport = close(transport);
+                retryOrDrop(job, e);
+            } finally {
+                sendTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+        close(transport);
+    }
+
+    private Transport send(MailJob job, Transport transport) throws Exception {
+        if (!(mailSender instanceof JavaMailSenderImpl sender)) {
+            MimeMessage message = mailSender.createMimeMessage();
+            job.preparator().prepare(message);
+            mailSender.send(message);
+            return transport;
+        }
+
+        // Created by the sender so its default encoding and file type map apply
+        Session session = sender.getSession();
+        MimeMessage message = sender.createMimeMessage();
+        job.preparator().prepare(message);
+        message.saveChanges();
+
+        if (transport == null || !transport.isConnected()) {
+            close(transport);
+            transport = session.getTransport(sender.getProtocol() != null ? sender.getProtocol() : "smtp");
+            transport.connect(sender.getHost(), sender.getPort(), sender.getUsername(), sender.getPassword());
+        }
+        transport.sendMessage(message, message.getAllRecipients());
+        return transport;
+    }
+
+    private void retryOrDrop(MailJob job, Exception e) {
+        if (!running) {
+            job.result().cancel(false);
+            return;
+        }
+        if (job.attempt() >= maxAttempts) {
+            count("mail.dispatch.failed", job.priority());
+            log.error("Giving up on {} after {} attempts: {}", job.description(), job.attempt(), e.getMessage(), e);
+            job.result().completeExceptionally(e);
+            return;
+        }
+
+        long delay = backoffMs << (job.attempt() - 1);
+        count("mail.dispatch.retried", job.priority());
+        log.warn("Failed to send {} (attempt {}), retrying in {} ms: {}", job.description(), job.attempt(), delay, e.getMessage());
+
+        queued.incrementAndGet();
+        MailJob retry = new MailJob(job.priority(), job.sequence(), job.description(), job.preparator(),
+                job.attempt() + 1, job.result());
+        retryScheduler.schedule(() -> queue.add(retry), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private Transport close(Transport transport) {
+        if (transport != null) {
+            try {
+                transport.close();
+            } catch (Exception e) {
+                log.debug("Error closing SMTP transport: {}", e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    private void count(String name, Priority priority) {
+        meterRegistry.counter(name, "priority", priority.name().toLowerCase(Locale.ROOT)).increment();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        retryScheduler.shutdownNow();
+        workers.forEach(Thread::interrupt);
+        int unsent = queued.get();
+        if (unsent > 0) {
+            log.warn("Mail dispatcher stopped with {} messages still queued", unsent);
+        }
+        pending.forEach(result -> result.cancel(false));
+    }
+}
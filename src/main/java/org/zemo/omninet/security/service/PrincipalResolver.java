@@ -0,0 +1,67 @@
+package org.zemo.omninet.security.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.zemo.omninet.security.model.User;
+import org.zemo.omninet.security.model.VerifiedClaims;
+
+import java.util.Optional;
+
+/**
+ * Turns verified access-token claims into the authenticated {@link User} principal.
+ * In stateless mode the principal is built from the claims alone (id, email, name) and only the
+ * in-memory token version is checked; otherwise the user row is loaded as before.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PrincipalResolver {
+
+    private final UserService userService;
+    private final TokenVersionService tokenVersionService;
+    private final TokenRevocationService tokenRevocationService;
+
+    @Value("${jwt.stateless-principal.enabled:false}")
+    private boolean statelessPrincipal;
+
+    public Optional<User> resolve(VerifiedClaims claims) {
+        if (claims.userId() == null) {
+            return Optional.empty();
+        }
+
+        if (tokenRevocationService.isRevoked(claims)) {
+            log.debug("Revoked access token {} presented by user {}", claims.tokenId(), claims.userId());
+            return Optional.empty();
+        }
+
+        if (statelessPrincipal) {
+            if (!tokenVersionService.isCurrent(claims.userId(), claims.tokenVersion())) {
+                log.debug("Token version outdated for user {}", claims.userId());
+                return Optional.empty();
+            }
+            User user = new User();
+            user.setId(claims.userId());
+            user.setEmail(claims.email());
+            user.setName(claims.name());
+            user.setTokenVersion(claims.tokenVersion());
+            return Optional.of(user);
+        }
+
+        Optional<User> userOpt = userService.getUserById(claims.userId());
+        if (userOpt.isPresent()) {
+            User user = userOpt.get();
+            tokenVersionService.remember(user.getId(), user.getTokenVersion());
+            if (user.getTokenVersion() != claims.tokenVersion()) {
+                log.debug("Token version outdated for user {}", claims.userId());
+                return Optional.empty();
+            }
+        }
+        return userOpt;
+    }
+
+    public boolean isStatelessPrincipal() {
+        return statelessPrincipal;
+    }
+}
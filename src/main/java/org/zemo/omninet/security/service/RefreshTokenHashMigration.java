@@ -0,0 +1,108 @@
+package org.zemo.omninet.security.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.zemo.omninet.security.util.TokenHashUtils;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Backfills refresh_tokens.token_hash from the legacy token column (full JWT) while that column
+ * exists. Rows are hashed in batches at startup and again periodically, so tokens issued by nodes
+ * still running the old build during a rolling deploy become usable here too. The legacy column
+ * only loses its NOT NULL constraint, since this build no longer writes it; dropping the column
+ * is left to an explicit schema migration once every node runs this build.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class RefreshTokenHashMigration {
+
+    private static final int BATCH_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    // Injected so this runs only after the schema update has completed
+    private final EntityManagerFactory entityManagerFactory;
+
+    @PostConstruct
+    public void migrate() {
+        try {
+            if (!hasLegacyTokenColumn()) {
+                return;
+            }
+            jdbcTemplate.execute("ALTER TABLE refresh_tokens ALTER COLUMN token DROP NOT NULL");
+            int migrated = backfill();
+            if (migrated > 0) {
+                log.info("Backfilled {} refresh token hashes from the legacy token column", migrated);
+            }
+        } catch (DataAccessException e) {
+            log.warn("Refresh token hash migration skipped: {}", e.getMessage());
+        }
+    }
+
+    // Picks up rows inserted by nodes on the old build after startup
+    @Scheduled(initialDelay = 300000, fixedDelay = 300000)
+    public void backfillLegacyRows() {
+        try {
+            if (!hasLegacyTokenColumn()) {
+                return;
+            }
+            int migrated = backfill();
+            if (migrated > 0) {
+                log.info("Backfilled {} refresh token hashes from the legacy token column", migrated);
+            }
+        } catch (DataAccessException e) {
+            log.warn("Refresh token hash backfill failed: {}", e.getMessage());
+        }
+    }
+
+    private int backfill() {
+        List<Object[]> batch = new ArrayList<>();
+        int[] migrated = {0};
+        jdbcTemplate.query("SELECT id, token FROM refresh_tokens WHERE token_hash IS NULL AND token IS NOT NULL", rs -> {
+            batch.add(new Object[]{TokenHashUtils.sha256Hex(rs.getString("token")), rs.getString("id")});
+            if (batch.size() >= BATCH_SIZE) {
+                migrated[0] += flush(batch);
+            }
+        });
+        migrated[0] += flush(batch);
+        return migrated[0];
+    }
+
+    private int flush(List<Object[]> batch) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        jdbcTemplate.batchUpdate("UPDATE refresh_tokens SET token_hash = ? WHERE id = ?", batch);
+        int size = batch.size();
+        batch.clear();
+        return size;
+    }
+
+    private boolean hasLegacyTokenColumn() {
+        Boolean exists = jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            DatabaseMetaData metaData = connection.getMetaData();
+            for (String table : new String[]{"refresh_tokens", "REFRESH_TOKENS"}) {
+                for (String column : new String[]{"token", "TOKEN"}) {
+                    try (ResultSet rs = metaData.getColumns(null, null, table, column)) {
+                        if (rs.next()) {
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        });
+        return Boolean.TRUE.equals(exists);
+    }
+}
@@ -2,17 +2,22 @@ package org.zemo.omninet.security.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.zemo.omninet.security.model.RefreshToken;
 import org.zemo.omninet.security.model.User;
 import org.zemo.omninet.security.repository.RefreshTokenRepository;
+import org.zemo.omninet.security.util.TokenHashUtils;
 
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.temporal.ChronoUnit;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 @RequiredArgsConstructor
@@ -23,6 +28,12 @@ public class RefreshTokenService {
     private final JwtService jwtService;
     private final UserService userService;
 
+    @Value("${jwt.refresh-token.revoked-cache.max-size:10000}")
+    private int revokedCacheMaxSize;
+
+    // Token hash -> expiry (epoch millis) of refresh tokens whose row is confirmed revoked
+    private final Map<String, Long> revokedHashes = new ConcurrentHashMap<>();
+
     @Transactional
     public RefreshToken createRefreshToken(User user, String userAgent, String ipAddress) {
         // Limit the number of active refresh tokens per user (max 5 devices)
@@ -41,15 +52,23 @@ public class RefreshTokenService {
     @Transactional
     public Optional<String> refreshAccessToken(String refreshTokenString) {
         try {
+            String tokenHash = TokenHashUtils.sha256Hex(refreshTokenString);
+            if (isKnownRevoked(tokenHash)) {
+                log.warn("Known revoked refresh token provided");
+                return Optional.empty();
+            }
+
             if (!jwtService.isTokenValid(refreshTokenString) || !jwtService.isRefreshToken(refreshTokenString)) {
                 log.warn("Invalid refresh token provided");
                 return Optional.empty();
             }
 
-            Optional<RefreshToken> refreshTokenOpt = refreshTokenRepository.findByTokenAndRevokedFalse(refreshTokenString);
+            Optional<RefreshToken> refreshTokenOpt = refreshTokenRepository.findByTokenHashAndRevokedFalse(tokenHash);
 
             if (refreshTokenOpt.isEmpty()) {
                 log.warn("Refresh token not found in database");
+                // Missing rows are not cached: a legacy token may simply not have its hash backfilled yet
+                refreshTokenRepository.findFirstByTokenHashAndRevokedTrue(tokenHash).ifPresent(this::rememberRevoked);
                 return Optional.empty();
             }
 
@@ -82,11 +101,17 @@ public class RefreshTokenService {
 
     @Transactional
     public void revokeToken(String refreshTokenString) {
-        Optional<RefreshToken> refreshTokenOpt = refreshTokenRepository.findByTokenAndRevokedFalse(refreshTokenString);
+        String tokenHash = TokenHashUtils.sha256Hex(refreshTokenString);
+        if (isKnownRevoked(tokenHash)) {
+            return;
+        }
+
+        Optional<RefreshToken> refreshTokenOpt = refreshTokenRepository.findByTokenHashAndRevokedFalse(tokenHash);
         if (refreshTokenOpt.isPresent()) {
             RefreshToken refreshToken = refreshTokenOpt.get();
             refreshToken.setRevoked(true);
             refreshTokenRepository.save(refreshToken);
+            rememberRevoked(refreshToken);
             log.info("Revoked refresh token for user: {}", refreshToken.getUserId());
         }
     }
@@ -96,9 +121,50 @@ public class RefreshTokenService {
         List<RefreshToken> userTokens = refreshTokenRepository.findByUserIdAndRevokedFalse(userId);
         userTokens.forEach(token -> token.setRevoked(true));
         refreshTokenRepository.saveAll(userTokens);
+        userTokens.forEach(this::rememberRevoked);
         log.info("Revoked all refresh tokens for user: {}", userId);
     }
 
+    private boolean isKnownRevoked(String tokenHash) {
+        Long expiresAt = revokedHashes.get(tokenHash);
+        if (expiresAt == null) {
+            return false;
+        }
+        if (expiresAt < System.currentTimeMillis()) {
+            revokedHashes.remove(tokenHash);
+            return false;
+        }
+        return true;
+    }
+
+    private void rememberRevoked(RefreshToken refreshToken) {
+        if (refreshToken.getTokenHash() != null) {
+            rememberRevoked(refreshToken.getTokenHash(),
+                    refreshToken.getExpiresAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        }
+    }
+
+    private void rememberRevoked(String tokenHash, long expiresAtMillis) {
+        if (revokedHashes.size() >= revokedCacheMaxSize) {
+            long now = System.currentTimeMillis();
+            revokedHashes.values().removeIf(expiresAt -> expiresAt < now);
+            if (revokedHashes.size() >= revokedCacheMaxSize) {
+                evictSoonestExpiring();
+            }
+        }
+        revokedHashes.put(tokenHash, expiresAtMillis);
+    }
+
+    // Drops the tenth of the cache closest to expiry; refresh tokens share one lifetime, so these are the oldest
+    private void evictSoonestExpiring() {
+        revokedHashes.entrySet().stream()
+                .sorted(Map.Entry.comparingByValue())
+                .limit(Math.max(1, revokedCacheMaxSize / 10))
+                .map(Map.Entry::getKey)
+                .toList()
+                .forEach(revokedHashes::remove);
+    }
+
     @Transactional
     public void cleanupExpiredTokens() {
         refreshTokenRepository.deleteByExpiresAtBeforeOrRevokedTrue(LocalDateTime.now());
@@ -0,0 +1,130 @@
+package org.zemo.omninet.security.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.FanoutExchange;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.zemo.omninet.security.dto.RevocationEvent;
+import org.zemo.omninet.security.model.VerifiedClaims;
+import org.zemo.omninet.security.util.BloomFilter;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Access-token revocation without a per-request query. Revoked token ids are held in an exact
+ * set fronted by a Bloom filter, so the common "not revoked" answer is a few bit probes.
+ * Logout-all moves the user's token version forward instead of listing tokens. Both kinds of
+ * revocation are broadcast to every node over a RabbitMQ fanout exchange, once the surrounding
+ * transaction (if any) commits.
+ */
+@Service
+@Slf4j
+public class TokenRevocationService {
+
+    private final RabbitTemplate rabbitTemplate;
+    private final FanoutExchange revocationExchange;
+    private final TokenVersionService tokenVersionService;
+
+    private final int bloomExpectedItems;
+    private final double bloomFalsePositiveRate;
+
+    // Token id -> expiry (epoch millis); entries are dropped once the token would have expired anyway
+    private final Map<String, Long> revokedTokens = new ConcurrentHashMap<>();
+    private volatile BloomFilter bloomFilter;
+
+    public TokenRevocationService(RabbitTemplate rabbitTemplate,
+                                  FanoutExchange revocationExchange,
+                                  TokenVersionService tokenVersionService,
+                                  @Value("${auth.revocation.bloom.expected-items:100000}") int bloomExpectedItems,
+                                  @Value("${auth.revocation.bloom.false-positive-rate:0.001}") double bloomFalsePositiveRate) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.revocationExchange = revocationExchange;
+        this.tokenVersionService = tokenVersionService;
+        this.bloomExpectedItems = bloomExpectedItems;
+        this.bloomFalsePositiveRate = bloomFalsePositiveRate;
+        this.bloomFilter = new BloomFilter(bloomExpectedItems, bloomFalsePositiveRate);
+    }
+
+    public boolean isRevoked(VerifiedClaims claims) {
+        String tokenId = claims.tokenId();
+        return tokenId != null && bloomFilter.mightContain(tokenId) && revokedTokens.containsKey(tokenId);
+    }
+
+    public void revokeToken(VerifiedClaims claims) {
+        if (claims.tokenId() == null) {
+            return;
+        }
+        long expiresAt = claims.expiresAt().toEpochMilli();
+        addRevokedToken(claims.tokenId(), expiresAt);
+        publishAfterCommit(new RevocationEvent(RevocationEvent.Type.TOKEN, claims.tokenId(), claims.userId(), 0, expiresAt));
+        log.info("Revoked access token {} for user {}", claims.tokenId(), claims.userId());
+    }
+
+    public void revokeAllForUser(String userId) {
+        int version = tokenVersionService.bump(userId);
+        publishAfterCommit(new RevocationEvent(RevocationEvent.Type.USER, null, userId, version, 0));
+    }
+
+    @RabbitListener(queues = "#{revocationQueue.name}")
+    public void onRevocation(RevocationEvent event) {
+        try {
+            switch (event.getType()) {
+                case TOKEN -> addRevokedToken(event.getTokenId(), event.getExpiresAt());
+                case USER -> tokenVersionService.remember(event.getUserId(), event.getTokenVersion());
+            }
+        } catch (Exception e) {
+            log.error("Error applying revocation event: {}", e.getMessage(), e);
+        }
+    }
+
+    private void addRevokedToken(String tokenId, long expiresAt) {
+        if (tokenId == null || expiresAt < System.currentTimeMillis()) {
+            return;
+        }
+        revokedTokens.put(tokenId, expiresAt);
+        bloomFilter.put(tokenId);
+    }
+
+    // Other nodes must not act on a revocation whose transaction may still roll back
+    private void publishAfterCommit(RevocationEvent event) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publish(event);
+                }
+            });
+        } else {
+            publish(event);
+        }
+    }
+
+    private void publish(RevocationEvent event) {
+        try {
+            rabbitTemplate.convertAndSend(revocationExchange.getName(), "", event);
+        } catch (Exception e) {
+            // Local state is already updated; other nodes fall back to the token version TTL
+            log.error("Failed to broadcast revocation event: {}", e.getMessage());
+        }
+    }
+
+    // Bloom filters cannot delete, so rebuild from the live entries once expired ones are dropped
+    @Scheduled(fixedRate = 600000) // 10 minutes
+    public void rebuildFilter() {
+        long now = System.currentTimeMillis();
+        revokedTokens.values().removeIf(expiresAt -> expiresAt < now);
+
+        BloomFilter rebuilt = new BloomFilter(bloomExpectedItems, bloomFalsePositiveRate);
+        revokedTokens.keySet().forEach(rebuilt::put);
+        bloomFilter = rebuilt;
+        // Catch ids added while the new filter was being filled
+        revokedTokens.keySet().forEach(rebuilt::put);
+        log.debug("Rebuilt revocation filter with {} revoked tokens", revokedTokens.size());
+    }
+}
@@ -0,0 +1,83 @@
+package org.zemo.omninet.security.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.zemo.omninet.security.repository.UserRepository;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds each user's current token version in memory for a short TTL so access tokens can be
+ * checked for revocation without a per-request query. Bumping the version invalidates every
+ * access token issued before it.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TokenVersionService {
+
+    private final UserRepository userRepository;
+
+    @Value("${jwt.token-version.ttl-ms:30000}")
+    private long ttlMs;
+
+    private record CachedVersion(int version, long loadedAt) {
+    }
+
+    private final Map<String, CachedVersion> versions = new ConcurrentHashMap<>();
+
+    public boolean isCurrent(String userId, int tokenVersion) {
+        return currentVersion(userId) == tokenVersion;
+    }
+
+    public int currentVersion(String userId) {
+        long now = System.currentTimeMillis();
+        CachedVersion cached = versions.get(userId);
+        if (cached != null && now - cached.loadedAt() < ttlMs) {
+            return cached.version();
+        }
+
+        // Unknown users get -1 so no token can match
+        int version = userRepository.findTokenVersionById(userId).orElse(-1);
+        versions.put(userId, new CachedVersion(version, now));
+        return version;
+    }
+
+    // Records a version learned elsewhere (e.g. a freshly loaded User) without a query
+    public void remember(String userId, int version) {
+        versions.put(userId, new CachedVersion(version, System.currentTimeMillis()));
+    }
+
+    /**
+     * Moves the user's token version forward and returns the new version. The cached version is
+     * only replaced once the change commits, so a concurrent read cannot cache the old one again
+     * and a rollback leaves the cache untouched.
+     */
+    @Transactional
+    public int bump(String userId) {
+        userRepository.incrementTokenVersion(userId);
+        int version = userRepository.findTokenVersionById(userId).orElse(-1);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    remember(userId, version);
+                }
+            });
+        } else {
+            remember(userId, version);
+        }
+        log.info("Bumped token version for user {}", userId);
+        return version;
+    }
+
+    public void evict(String userId) {
+        versions.remove(userId);
+    }
+}
@@ -0,0 +1,38 @@
+package org.zemo.omninet.security.service;
+
+import org.zemo.omninet.security.model.EmailVerification;
+import org.zemo.omninet.security.model.PendingUser;
+
+import java.util.Optional;
+
+/**
+ * Store for the short-lived credentials of the email registration flow: the OTP sent to an
+ * address and the pending user created once it is verified. Selected with
+ * {@code auth.verification-store=memory|jpa}; the in-memory store is node local, so multi-node
+ * deployments either pin registration to one node or fall back to the shared JPA store.
+ */
+public interface VerificationStore {
+
+    enum OtpCheck {
+        VERIFIED, INVALID, EXHAUSTED
+    }
+
+    void saveOtp(EmailVerification verification);
+
+    // Counts the attempt and, on a match, consumes the code so it can only succeed once
+    OtpCheck verifyOtp(String email, String otp);
+
+    void savePendingUser(PendingUser pendingUser);
+
+    // Looks up the pending user for the token and email without consuming it
+    Optional<PendingUser> peekPendingUser(String verificationToken, String email);
+
+    // Atomically removes and returns the pending user if the token belongs to the given email;
+    // inside a transaction the removal is undone if the transaction rolls back
+    Optional<PendingUser> consumePendingUser(String verificationToken, String email);
+
+    // Drops any outstanding OTP and pending user for the email before a new registration starts
+    void clear(String email);
+
+    void purgeExpired();
+}
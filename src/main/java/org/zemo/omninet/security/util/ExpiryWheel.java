@@ -0,0 +1,67 @@
+package org.zemo.omninet.security.util;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Hashed timing wheel for expiring in-memory entries. Scheduling is an O(1) append to the slot
+ * for the deadline's tick; {@link #advance} drains only the slots of ticks that have fully passed,
+ * so an entry expires at most one tick late, and entries whose deadline lies more than one
+ * rotation ahead are simply put back for a later pass.
+ */
+public class ExpiryWheel {
+
+    private record Timeout(long deadlineMillis, Runnable onExpire) {
+    }
+
+    private final Queue<Timeout>[] slots;
+    private final long tickMillis;
+    private long lastTick;
+
+    @SuppressWarnings("unchecked")
+    public ExpiryWheel(int slotCount, long tickMillis) {
+        this.slots = new Queue[Math.max(1, slotCount)];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.tickMillis = Math.max(1, tickMillis);
+        this.lastTick = System.currentTimeMillis() / this.tickMillis;
+    }
+
+    public void schedule(long deadlineMillis, Runnable onExpire) {
+        slotFor(deadlineMillis).add(new Timeout(deadlineMillis, onExpire));
+    }
+
+    // Single caller (the scheduler); runs the expiry callback of every entry that has come due
+    public synchronized int advance(long nowMillis) {
+        long currentTick = nowMillis / tickMillis;
+        if (currentTick <= lastTick) {
+            return 0;
+        }
+        int expired = 0;
+
+        // A tick still in progress may gain due entries later, so it is drained on the next pass
+        for (long tick = Math.max(lastTick, currentTick - slots.length); tick < currentTick; tick++) {
+            Queue<Timeout> slot = slots[(int) Math.floorMod(tick, (long) slots.length)];
+            int pending = slot.size();
+            for (int j = 0; j < pending; j++) {
+                Timeout timeout = slot.poll();
+                if (timeout == null) {
+                    break;
+                }
+                if (timeout.deadlineMillis() <= nowMillis) {
+                    timeout.onExpire().run();
+                    expired++;
+                } else {
+                    slot.add(timeout);
+                }
+            }
+        }
+        lastTick = currentTick;
+        return expired;
+    }
+
+    private Queue<Timeout> slotFor(long deadlineMillis) {
+        return slots[(int) Math.floorMod(deadlineMillis / tickMillis, (long) slots.length)];
+    }
+}
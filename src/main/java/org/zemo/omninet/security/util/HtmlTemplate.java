@@ -0,0 +1,115 @@
+package org.zemo.omninet.security.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Minimal HTML template compiled once into literal and placeholder segments. {@code {{name}}}
+ * inserts an HTML-escaped value and {@code {{&name}}} inserts it verbatim; placeholder names are
+ * bound to argument positions at compile time, so rendering is a single pass into a reused builder.
+ */
+public final class HtmlTemplate {
+
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(8192));
+
+    private final String[] literals;
+    private final int[] argIndexes;
+    private final boolean[] escaped;
+    private final int literalLength;
+
+    private HtmlTemplate(String[] literals, int[] argIndexes, boolean[] escaped) {
+        this.literals = literals;
+        this.argIndexes = argIndexes;
+        this.escaped = escaped;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+    }
+
+    public static HtmlTemplate compile(String source, String... parameterNames) {
+        List<String> names = List.of(parameterNames);
+        List<String> literals = new ArrayList<>();
+        List<Integer> indexes = new ArrayList<>();
+        List<Boolean> escapes = new ArrayList<>();
+
+        int pos = 0;
+        while (true) {
+            int open = source.indexOf("{{", pos);
+            if (open < 0) {
+                break;
+            }
+            int close = source.indexOf("}}", open + 2);
+            if (close < 0) {
+                throw new IllegalArgumentException("Unclosed placeholder at offset " + open);
+            }
+
+            String name = source.substring(open + 2, close).trim();
+            boolean raw = name.startsWith("&");
+            if (raw) {
+                name = name.substring(1).trim();
+            }
+            int index = names.indexOf(name);
+            if (index < 0) {
+                throw new IllegalArgumentException("Unknown template placeholder: " + name);
+            }
+
+            literals.add(source.substring(pos, open));
+            indexes.add(index);
+            escapes.add(!raw);
+            pos = close + 2;
+        }
+        literals.add(source.substring(pos));
+
+        int[] argIndexes = indexes.stream().mapToInt(Integer::intValue).toArray();
+        boolean[] escaped = new boolean[escapes.size()];
+        for (int i = 0; i < escaped.length; i++) {
+            escaped[i] = escapes.get(i);
+        }
+        return new HtmlTemplate(literals.toArray(String[]::new), argIndexes, escaped);
+    }
+
+    public String render(Object... args) {
+        StringBuilder out = BUFFER.get();
+        out.setLength(0);
+        renderTo(out, args);
+        String result = out.toString();
+        // Don't let one huge render pin a large buffer on the thread forever
+        if (out.capacity() > 1 << 20) {
+            BUFFER.remove();
+        }
+        return result;
+    }
+
+    public void renderTo(StringBuilder out, Object... args) {
+        out.ensureCapacity(out.length() + literalLength + 64 * argIndexes.length);
+        for (int i = 0; i < argIndexes.length; i++) {
+            out.append(literals[i]);
+            Object value = args[argIndexes[i]];
+            if (value == null) {
+                continue;
+            }
+            if (escaped[i]) {
+                escapeTo(out, value.toString());
+            } else {
+                out.append(value);
+            }
+        }
+        out.append(literals[literals.length - 1]);
+    }
+
+    public static void escapeTo(StringBuilder out, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&' -> out.append("&amp;");
+                case '<' -> out.append("&lt;");
+                case '>' -> out.append("&gt;");
+                case '"' -> out.append("&quot;");
+                case '\'' -> out.append("&#39;");
+                default -> out.append(c);
+            }
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package org.zemo.omninet.storage.config;
 
+import io.minio.MinioAsyncClient;
 import io.minio.MinioClient;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -24,4 +25,12 @@ public class MinioConfig {
                 .credentials(accessKey, secretKey)
                 .build();
     }
-}
\ No newline at end of file
+
+    @Bean
+    public MultipartMinioClient multipartMinioClient() {
+        return new MultipartMinioClient(MinioAsyncClient.builder()
+                .endpoint(minioUrl)
+                .credentials(accessKey, secretKey)
+                .build());
+    }
+}
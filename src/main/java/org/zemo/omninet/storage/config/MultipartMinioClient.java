@@ -0,0 +1,47 @@
+package org.zemo.omninet.storage.config;
+
+import com.google.common.collect.Multimap;
+import io.minio.CreateMultipartUploadResponse;
+import io.minio.ListMultipartUploadsResponse;
+import io.minio.ListPartsResponse;
+import io.minio.MinioAsyncClient;
+import io.minio.ObjectWriteResponse;
+import io.minio.AbortMultipartUploadResponse;
+import io.minio.messages.Part;
+
+/**
+ * Exposes MinIO's low-level S3 multipart calls, which the client library keeps protected,
+ * so uploads can be coordinated by the server while the parts go straight to storage.
+ */
+public class MultipartMinioClient extends MinioAsyncClient {
+
+    public MultipartMinioClient(MinioAsyncClient client) {
+        super(client);
+    }
+
+    public CreateMultipartUploadResponse createMultipartUpload(String bucket, String object,
+                                                               Multimap<String, String> headers) throws Exception {
+        return createMultipartUploadAsync(bucket, null, object, headers, null).get();
+    }
+
+    public ListPartsResponse listParts(String bucket, String object, String uploadId,
+                                       Integer partNumberMarker) throws Exception {
+        return listPartsAsync(bucket, null, object, 1000, partNumberMarker, uploadId, null, null).get();
+    }
+
+    public ObjectWriteResponse completeMultipartUpload(String bucket, String object, String uploadId,
+                                                       Part[] parts) throws Exception {
+        return completeMultipartUploadAsync(bucket, null, object, uploadId, parts, null, null).get();
+    }
+
+    public AbortMultipartUploadResponse abortMultipartUpload(String bucket, String object,
+                                                             String uploadId) throws Exception {
+        return abortMultipartUploadAsync(bucket, null, object, uploadId, null, null).get();
+    }
+
+    public ListMultipartUploadsResponse listMultipartUploads(String bucket, String prefix, String keyMarker,
+                                                             String uploadIdMarker) throws Exception {
+        return listMultipartUploadsAsync(bucket, null, null, null, keyMarker, 1000, prefix, uploadIdMarker,
+                null, null).get();
+    }
+}
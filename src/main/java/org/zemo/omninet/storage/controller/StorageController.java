@@ -1,23 +1,34 @@
 package org.zemo.omninet.storage.controller;
 
-import io.minio.Result;
-import io.minio.messages.Item;
+import io.minio.http.Method;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 import org.zemo.omninet.notes.util.CommonUtil;
 import org.zemo.omninet.storage.dto.*;
+import org.zemo.omninet.storage.exception.StorageQuotaExceededException;
+import org.zemo.omninet.storage.service.FolderDeletionService;
+import org.zemo.omninet.storage.service.MultipartUploadService;
+import org.zemo.omninet.storage.service.ObjectMetadataCache;
+import org.zemo.omninet.storage.service.RangeDownloadService;
 import org.zemo.omninet.storage.service.StorageService;
+import org.zemo.omninet.storage.service.StorageUsageService;
 
-import java.time.LocalDateTime;
-import java.util.ArrayList;
+import java.io.InputStream;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.RejectedExecutionException;
 
 @Slf4j
 @RequiredArgsConstructor
@@ -28,12 +39,29 @@ import java.util.Objects;
 public class StorageController {
 
     private final StorageService storageService;
+    private final MultipartUploadService multipartUploadService;
+    private final FolderDeletionService folderDeletionService;
+    private final StorageUsageService storageUsageService;
+    private final RangeDownloadService rangeDownloadService;
+
+    @Value("${storage.listing.default-page-size:200}")
+    private int defaultPageSize;
+
+    @Value("${storage.listing.max-page-size:1000}")
+    private int maxPageSize;
 
     /**
-     * Extract user Email from authentication object
+     * Extract user Email from authentication object, provisioning the user's folder on first access
      */
     private String getUserEmail() {
-        return Objects.requireNonNull(CommonUtil.getLoggedInUser()).getEmail();
+        String userEmail = Objects.requireNonNull(CommonUtil.getLoggedInUser()).getEmail();
+        storageService.ensureUserFolder(userEmail);
+        return userEmail;
+    }
+
+    private ResponseEntity<StorageResponse> quotaExceeded(StorageQuotaExceededException e) {
+        return ResponseEntity.status(HttpStatus.INSUFFICIENT_STORAGE)
+                .body(StorageResponse.error(e.getMessage()));
     }
 
     /**
@@ -89,15 +117,24 @@ public class StorageController {
     /**
      * Delete a folder for the authenticated user
      */
-    @Operation(description = "Api to delete a folder.\n Should provide full path eg- \"pop\", \"pop/opo\"")
+    @Operation(description = "Api to delete a folder and everything in it.\n Should provide full path eg- \"pop\", \"pop/opo\"\n" +
+            "With async=true the delete runs in the background and an operation to poll is returned")
     @DeleteMapping("/folders")
     public ResponseEntity<StorageResponse> deleteFolder(
-            @Valid @RequestBody DeleteFolderRequest request) {
+            @Valid @RequestBody DeleteFolderRequest request,
+            @RequestParam(name = "async", defaultValue = "false") boolean async) {
         try {
             log.info("Deleting folder {}", request.getFolderName());
             String userEmail = getUserEmail();
+            if (async) {
+                FolderDeletionStatus status = folderDeletionService.start(userEmail, request.getFolderName());
+                return ResponseEntity.accepted().body(StorageResponse.success("Folder deletion started", status));
+            }
             storageService.deleteUserFolder(userEmail, request.getFolderName());
             return ResponseEntity.ok(StorageResponse.success("Folder deleted successfully"));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(StorageResponse.error("Too many folder deletions in progress, try again later"));
         } catch (Exception e) {
             log.error("Error deleting folder for user {}: {}", getUserEmail(), e.getMessage());
             return ResponseEntity.badRequest()
@@ -105,6 +142,36 @@ public class StorageController {
         }
     }
 
+    /**
+     * Get the progress of a background folder delete
+     */
+    @Operation(description = "Api to poll a folder deletion started with async=true")
+    @GetMapping("/folders/deletions/{operationId}")
+    public ResponseEntity<StorageResponse> getFolderDeletionStatus(@PathVariable String operationId) {
+        FolderDeletionStatus status = folderDeletionService.getStatus(getUserEmail(), operationId);
+        if (status == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(StorageResponse.error("Folder deletion not found"));
+        }
+        return ResponseEntity.ok(StorageResponse.success("Folder deletion status retrieved", status));
+    }
+
+    /**
+     * Get the storage used by the authenticated user
+     */
+    @Operation(description = "Api to get the bytes and number of files the user stores, and their quota")
+    @GetMapping("/usage")
+    public ResponseEntity<StorageResponse> getUsage() {
+        try {
+            StorageUsageResponse usage = storageUsageService.getUsage(getUserEmail());
+            return ResponseEntity.ok(StorageResponse.success("Storage usage retrieved", usage));
+        } catch (Exception e) {
+            log.error("Error getting storage usage for user {}: {}", getUserEmail(), e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(StorageResponse.error("Failed to get storage usage: " + e.getMessage()));
+        }
+    }
+
     /**
      * Delete a file for the authenticated user
      */
@@ -168,67 +235,34 @@ public class StorageController {
     /**
      * List all files and folders in a specific folder
      */
-    @Operation(description = "Api to get all files and folders in a specific folder")
+    @Operation(description = "Api to get all files and folders in a specific folder.\n Pass pageSize (and the returned nextToken as continuationToken) to page through large folders; sortBy is name, size or lastModified, type is file or folder.")
     @GetMapping("/contents")
     public ResponseEntity<StorageResponse> listFolderContents(
-            @RequestParam(name = "folderName", required = false,defaultValue = "") String folderName) {
+            @RequestParam(name = "folderName", required = false,defaultValue = "") String folderName,
+            @RequestParam(name = "pageSize", required = false) Integer pageSize,
+            @RequestParam(name = "continuationToken", required = false) String continuationToken,
+            @RequestParam(name = "sortBy", required = false, defaultValue = "name") String sortBy,
+            @RequestParam(name = "order", required = false, defaultValue = "asc") String order,
+            @RequestParam(name = "filter", required = false) String filter,
+            @RequestParam(name = "type", required = false) String type) {
         try {
-            System.out.println("Listing contents of folder: " + folderName);
-
             String userEmail = getUserEmail();
 
-            if ("".equals(folderName)) {
-                folderName = "";
-            }
-
             String normalizedFolder = normalizeFolderName(folderName);
             String fullFolderPath = "users/" + userEmail + "/" + normalizedFolder;
 
-            Iterable<Result<Item>> objects = storageService.listDirectChildren(fullFolderPath);
-            List<FileInfoResponse> fileInfoList = new ArrayList<>();
-
-            for (Result<Item> result : objects) {
-                Item item = result.get();
-                String objectName = item.objectName();
-
-                if (objectName.equals(fullFolderPath)) {
-                    continue;
-                }
-
-                String relativePath = objectName.substring(fullFolderPath.length());
-                if (relativePath.isEmpty()) {
-                    continue;
-                }
-
-                boolean isFolder = objectName.endsWith("/");
-                String name;
-
-                if (isFolder) {
-                    name = relativePath.substring(0, relativePath.length() - 1);
-                    if (name.contains("/")) {
-                        continue;
-                    }
-                } else {
-                    name = relativePath;
-                    if (name.contains("/")) {
-                        continue;
-                    }
-                }
-
-                long size = isFolder ? 0 : item.size();
-                LocalDateTime lastModified = item.lastModified() != null ?
-                        item.lastModified().toLocalDateTime() :
-                        LocalDateTime.now();
-
-                String fullPathFromUserRoot = normalizedFolder + name + (isFolder ? "/" : "");
-                if (fullPathFromUserRoot.startsWith("/")) {
-                    fullPathFromUserRoot = fullPathFromUserRoot.substring(1);
-                }
-
-                fileInfoList.add(new FileInfoResponse(name, fullPathFromUserRoot, size, lastModified, isFolder));
+            if (pageSize == null && continuationToken == null) {
+                // Unpaged request: the whole folder, as before
+                List<FileInfoResponse> fileInfoList = storageService.listFolder(fullFolderPath, normalizedFolder);
+                return ResponseEntity.ok(StorageResponse.success("Folder contents retrieved successfully", fileInfoList));
             }
 
-            return ResponseEntity.ok(StorageResponse.success("Folder contents retrieved successfully", fileInfoList));
+            int size = pageSize != null ? Math.max(1, Math.min(pageSize, maxPageSize)) : defaultPageSize;
+            FolderPageResponse page = storageService.listFolderPage(fullFolderPath, normalizedFolder,
+                    continuationToken, size, sortBy, order, filter, type);
+            return ResponseEntity.ok(StorageResponse.success("Folder contents retrieved successfully", page));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(StorageResponse.error(e.getMessage()));
         } catch (Exception e) {
             log.error("Error listing folder contents '{}' for user {}: {}", folderName, getUserEmail(), e.getMessage());
             return ResponseEntity.badRequest()
@@ -245,10 +279,13 @@ public class StorageController {
     public ResponseEntity<StorageResponse> generateUploadUrl(@Valid @RequestBody FileUploadRequest request) {
         try {
             String userEmail = getUserEmail();
-            String presignedUrl = storageService.generatePresignedUploadUrl(userEmail, request.getFileName());
+            String presignedUrl = storageService.generatePresignedUploadUrl(userEmail, request.getFileName(),
+                    request.getSize() != null ? request.getSize() : -1);
 
             PresignedUrlResponse response = new PresignedUrlResponse(presignedUrl, request.getFileName());
             return ResponseEntity.ok(StorageResponse.success("Upload URL generated successfully", response));
+        } catch (StorageQuotaExceededException e) {
+            return quotaExceeded(e);
         } catch (Exception e) {
             log.error("Error generating upload URL for user {}: {}", getUserEmail(), e.getMessage());
             return ResponseEntity.badRequest()
@@ -275,4 +312,186 @@ public class StorageController {
                     .body(StorageResponse.error("Failed to generate download URL: " + e.getMessage()));
         }
     }
+
+    /**
+     * Upload a file through the server, streamed straight to storage
+     */
+    @Operation(description = "Api to upload a file through the server.\n fileName is the full path eg- \"docs/report.pdf\"")
+    @PostMapping(value = "/files/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<StorageResponse> uploadFile(
+            @RequestParam(name = "fileName") String fileName,
+            @RequestParam(name = "file") MultipartFile file) {
+        try {
+            String userEmail = getUserEmail();
+            try (InputStream in = file.getInputStream()) {
+                storageService.uploadUserFile(userEmail, fileName, in, file.getSize(), file.getContentType());
+            }
+            return ResponseEntity.ok(StorageResponse.success("File uploaded successfully"));
+        } catch (StorageQuotaExceededException e) {
+            return quotaExceeded(e);
+        } catch (Exception e) {
+            log.error("Error uploading file for user {}: {}", getUserEmail(), e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(StorageResponse.error("Failed to upload file: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Generate presigned upload URLs for many files in one request
+     */
+    @Operation(description = "Api to get upload URLs for many files at once. Files that fail validation are listed in errors; " +
+            "with checkExists=true existing files are not overwritten")
+    @PostMapping("/files/upload-urls")
+    public ResponseEntity<StorageResponse> generateUploadUrls(@Valid @RequestBody BatchPresignRequest request) {
+        try {
+            BatchPresignResponse response = storageService.generatePresignedUrls(
+                    getUserEmail(), request.getFiles(), Method.PUT, request.isCheckExists());
+            return ResponseEntity.ok(StorageResponse.success("Upload URLs generated successfully", response));
+        } catch (StorageQuotaExceededException e) {
+            return quotaExceeded(e);
+        } catch (Exception e) {
+            log.error("Error generating upload URLs for user {}: {}", getUserEmail(), e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(StorageResponse.error("Failed to generate upload URLs: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Generate presigned download URLs for many files in one request
+     */
+    @Operation(description = "Api to get download URLs for many files at once. Files that fail validation are listed in errors; " +
+            "with checkExists=true missing files are listed there too")
+    @PostMapping("/files/download-urls")
+    public ResponseEntity<StorageResponse> generateDownloadUrls(@Valid @RequestBody BatchPresignRequest request) {
+        try {
+            BatchPresignResponse response = storageService.generatePresignedUrls(
+                    getUserEmail(), request.getFiles(), Method.GET, request.isCheckExists());
+            return ResponseEntity.ok(StorageResponse.success("Download URLs generated successfully", response));
+        } catch (Exception e) {
+            log.error("Error generating download URLs for user {}: {}", getUserEmail(), e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(StorageResponse.error("Failed to generate download URLs: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Link a file to content the server already stores, skipping the upload
+     */
+    @Operation(description = "Api to check a file's SHA-256 before uploading. If the content is already stored the file " +
+            "is created without a transfer and linked=true is returned; otherwise upload it normally")
+    @PostMapping("/files/dedup")
+    public ResponseEntity<StorageResponse> linkFile(@Valid @RequestBody DedupUploadRequest request) {
+        try {
+            boolean linked = storageService.linkUserFile(getUserEmail(), request.getFileName(),
+                    request.getSha256(), request.getSize(), request.getContentType());
+            String message = linked ? "File linked to existing content" : "Content not stored, upload required";
+            return ResponseEntity.ok(StorageResponse.success(message, Map.of("linked", linked)));
+        } catch (StorageQuotaExceededException e) {
+            return quotaExceeded(e);
+        } catch (Exception e) {
+            log.error("Error linking file for user {}: {}", getUserEmail(), e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(StorageResponse.error("Failed to link file: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Download a file through the server, streamed straight from storage
+     */
+    @Operation(description = "Api to download a file through the server. Supports Range requests for seeking and resuming.")
+    @GetMapping("/files/download")
+    public ResponseEntity<?> downloadFile(@RequestParam(name = "fileName") String fileName,
+                                          @RequestHeader HttpHeaders requestHeaders) {
+        String objectName;
+        ObjectMetadataCache.Metadata metadata;
+        try {
+            objectName = storageService.buildUserFilePath(getUserEmail(), fileName);
+            metadata = storageService.refreshStat(objectName);
+        } catch (Exception e) {
+            log.error("Error downloading file '{}' for user {}: {}", fileName, getUserEmail(), e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(StorageResponse.error("Failed to download file: " + e.getMessage()));
+        }
+
+        if (!metadata.exists()) {
+            return ResponseEntity.status(404).body(StorageResponse.error("File does not exist: " + fileName));
+        }
+
+        String downloadName = fileName.substring(fileName.lastIndexOf('/') + 1);
+        MediaType contentType = metadata.contentType() != null
+                ? MediaType.parseMediaType(metadata.contentType())
+                : MediaType.APPLICATION_OCTET_STREAM;
+        return rangeDownloadService.serve(requestHeaders, storageService.rangeSource(objectName, metadata),
+                contentType, downloadName);
+    }
+
+    /**
+     * Start a multipart upload for a large file
+     */
+    @Operation(description = "Api to start a multipart upload. Returns the uploadId used by the other multipart apis.")
+    @PostMapping("/files/multipart")
+    public ResponseEntity<StorageResponse> initiateMultipartUpload(@Valid @RequestBody MultipartUploadRequest request) {
+        try {
+            String uploadId = multipartUploadService.initiate(getUserEmail(), request.getFileName(), request.getContentType(),
+                    request.getSize() != null ? request.getSize() : -1);
+            MultipartUploadResponse response = new MultipartUploadResponse(uploadId, request.getFileName(), List.of());
+            return ResponseEntity.ok(StorageResponse.success("Multipart upload started", response));
+        } catch (StorageQuotaExceededException e) {
+            return quotaExceeded(e);
+        } catch (Exception e) {
+            log.error("Error starting multipart upload for user {}: {}", getUserEmail(), e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(StorageResponse.error("Failed to start multipart upload: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Presign upload URLs for a batch of parts
+     */
+    @Operation(description = "Api to get PreSignedUrls for a batch of parts. Parts can be uploaded in parallel with PUT.")
+    @PostMapping("/files/multipart/parts")
+    public ResponseEntity<StorageResponse> presignMultipartParts(@Valid @RequestBody MultipartUploadRequest request) {
+        try {
+            List<MultipartUploadResponse.PartUrl> parts = multipartUploadService.presignParts(
+                    getUserEmail(), request.getFileName(), request.getUploadId(), request.getPartNumbers());
+            MultipartUploadResponse response = new MultipartUploadResponse(request.getUploadId(), request.getFileName(), parts);
+            return ResponseEntity.ok(StorageResponse.success("Part upload URLs generated successfully", response));
+        } catch (Exception e) {
+            log.error("Error presigning multipart parts for user {}: {}", getUserEmail(), e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(StorageResponse.error("Failed to generate part upload URLs: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Complete a multipart upload once every part is uploaded
+     */
+    @Operation(description = "Api to complete a multipart upload after all parts are uploaded.")
+    @PostMapping("/files/multipart/complete")
+    public ResponseEntity<StorageResponse> completeMultipartUpload(@Valid @RequestBody MultipartUploadRequest request) {
+        try {
+            multipartUploadService.complete(getUserEmail(), request.getFileName(), request.getUploadId());
+            return ResponseEntity.ok(StorageResponse.success("File uploaded successfully"));
+        } catch (Exception e) {
+            log.error("Error completing multipart upload for user {}: {}", getUserEmail(), e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(StorageResponse.error("Failed to complete multipart upload: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Abort a multipart upload and discard its uploaded parts
+     */
+    @Operation(description = "Api to abort a multipart upload.")
+    @DeleteMapping("/files/multipart")
+    public ResponseEntity<StorageResponse> abortMultipartUpload(@Valid @RequestBody MultipartUploadRequest request) {
+        try {
+            multipartUploadService.abort(getUserEmail(), request.getFileName(), request.getUploadId());
+            return ResponseEntity.ok(StorageResponse.success("Multipart upload aborted"));
+        } catch (Exception e) {
+            log.error("Error aborting multipart upload for user {}: {}", getUserEmail(), e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(StorageResponse.error("Failed to abort multipart upload: " + e.getMessage()));
+        }
+    }
 }
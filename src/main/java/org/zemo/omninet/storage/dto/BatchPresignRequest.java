@@ -0,0 +1,22 @@
+package org.zemo.omninet.storage.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchPresignRequest {
+
+    // Sizes are optional and only used for the quota check on uploads
+    @NotEmpty(message = "At least one file is required")
+    private List<@Valid FileUploadRequest> files;
+
+    // Downloads: report missing files. Uploads: refuse to overwrite existing files
+    private boolean checkExists;
+}
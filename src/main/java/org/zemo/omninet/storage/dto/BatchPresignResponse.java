@@ -0,0 +1,19 @@
+package org.zemo.omninet.storage.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchPresignResponse {
+
+    private List<PresignedUrlResponse> urls;
+
+    // File name to reason, for files that were not presigned
+    private Map<String, String> errors;
+}
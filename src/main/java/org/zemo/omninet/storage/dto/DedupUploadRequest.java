@@ -0,0 +1,30 @@
+package org.zemo.omninet.storage.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.PositiveOrZero;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DedupUploadRequest {
+
+    @NotBlank(message = "File name is required")
+    @Pattern(regexp = "^[a-zA-Z0-9._-]+(?:/[a-zA-Z0-9._-]+)*$",
+            message = "File name can only contain alphanumeric characters, dots, hyphens, underscores, and forward slashes")
+    private String fileName;
+
+    @NotBlank(message = "SHA-256 is required")
+    @Pattern(regexp = "^[0-9a-f]{64}$", message = "SHA-256 must be 64 lowercase hex characters")
+    private String sha256;
+
+    @NotNull(message = "Size is required")
+    @PositiveOrZero(message = "Size must not be negative")
+    private Long size;
+
+    private String contentType;
+}
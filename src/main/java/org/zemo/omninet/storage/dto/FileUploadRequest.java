@@ -2,6 +2,7 @@ package org.zemo.omninet.storage.dto;
 
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.PositiveOrZero;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -15,4 +16,8 @@ public class FileUploadRequest {
     @Pattern(regexp = "^[a-zA-Z0-9._-]+(?:/[a-zA-Z0-9._-]+)*$",
             message = "File name can only contain alphanumeric characters, dots, hyphens, underscores, and forward slashes")
     private String fileName;
+
+    // Declared size in bytes, reserved against the user's quota; required for presigned uploads while quotas are enforced
+    @PositiveOrZero(message = "Size must not be negative")
+    private Long size;
 }
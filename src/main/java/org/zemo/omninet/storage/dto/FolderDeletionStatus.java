@@ -0,0 +1,31 @@
+package org.zemo.omninet.storage.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FolderDeletionStatus {
+
+    public enum State {
+        QUEUED, RUNNING, COMPLETED, PARTIAL, FAILED
+    }
+
+    private String operationId;
+    private String folderName;
+    private State state;
+    private long deletedCount;
+    private long failedCount;
+
+    // A sample of the keys that could not be deleted
+    private List<String> failedKeys;
+
+    private String error;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+}
@@ -0,0 +1,20 @@
+package org.zemo.omninet.storage.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FolderPageResponse {
+
+    private List<FileInfoResponse> items;
+
+    // Pass back as continuationToken to fetch the next page; null on the last page
+    private String nextToken;
+
+    private int pageSize;
+}
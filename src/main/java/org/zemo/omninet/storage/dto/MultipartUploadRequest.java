@@ -0,0 +1,34 @@
+package org.zemo.omninet.storage.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.PositiveOrZero;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MultipartUploadRequest {
+
+    @NotBlank(message = "File name is required")
+    @Pattern(regexp = "^[a-zA-Z0-9._-]+(?:/[a-zA-Z0-9._-]+)*$",
+            message = "File name can only contain alphanumeric characters, dots, hyphens, underscores, and forward slashes")
+    private String fileName;
+
+    // Required for every call except initiate
+    private String uploadId;
+
+    // Initiate only
+    private String contentType;
+
+    // Initiate only, optional declared size in bytes checked against the user's quota
+    @PositiveOrZero(message = "Size must not be negative")
+    private Long size;
+
+    // Part numbers (1-10000) to presign
+    private List<Integer> partNumbers;
+}
@@ -0,0 +1,33 @@
+package org.zemo.omninet.storage.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MultipartUploadResponse {
+
+    private String uploadId;
+    private String fileName;
+    private List<PartUrl> parts;
+    private String expiresIn;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class PartUrl {
+        private int partNumber;
+        private String url;
+    }
+
+    public MultipartUploadResponse(String uploadId, String fileName, List<PartUrl> parts) {
+        this.uploadId = uploadId;
+        this.fileName = fileName;
+        this.parts = parts;
+        this.expiresIn = "1 hour";
+    }
+}
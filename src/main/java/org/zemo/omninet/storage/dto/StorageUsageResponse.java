@@ -0,0 +1,21 @@
+package org.zemo.omninet.storage.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StorageUsageResponse {
+
+    private long bytesUsed;
+    private long objectCount;
+
+    // 0 when the user has no quota
+    private long quotaBytes;
+
+    private LocalDateTime reconciledAt;
+}
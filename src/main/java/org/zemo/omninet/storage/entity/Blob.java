@@ -0,0 +1,32 @@
+package org.zemo.omninet.storage.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Deduplicated content stored once under blobs/<sha256>, shared by every BlobRef with that hash
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(indexes = {
+        @Index(name = "idx_blob_unreferenced_since", columnList = "unreferenced_since")
+})
+public class Blob {
+
+    @Id
+    @Column(length = 64)
+    private String sha256;
+
+    private long size;
+
+    private long refCount;
+
+    private LocalDateTime createdAt;
+
+    // Set when the last reference goes away; garbage collected after a grace period
+    private LocalDateTime unreferencedSince;
+}
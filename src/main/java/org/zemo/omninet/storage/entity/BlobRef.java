@@ -0,0 +1,32 @@
+package org.zemo.omninet.storage.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// A user path whose content lives in a shared Blob; the path itself only holds a zero-byte object
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(indexes = {
+        @Index(name = "idx_blob_ref_sha256", columnList = "sha256")
+})
+public class BlobRef {
+
+    @Id
+    @Column(length = 1024)
+    private String objectName;
+
+    @Column(length = 64)
+    private String sha256;
+
+    private long size;
+
+    private String contentType;
+
+    private LocalDateTime createdAt;
+}
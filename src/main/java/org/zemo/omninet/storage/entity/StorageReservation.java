@@ -0,0 +1,41 @@
+package org.zemo.omninet.storage.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Quota held for a presigned upload until the object lands and is charged, or the URL expires unused
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(indexes = {
+        @Index(name = "idx_storage_reservation_user", columnList = "userEmail"),
+        @Index(name = "idx_storage_reservation_created", columnList = "createdAt")
+})
+public class StorageReservation {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private String id;
+
+    private String userEmail;
+
+    @Column(length = 1024)
+    private String objectName;
+
+    private long bytes;
+
+    // Size of the object the upload replaces, or -1 if the path was empty
+    private long previousSize;
+
+    private LocalDateTime createdAt;
+
+    private LocalDateTime expiresAt;
+
+    // Set by the node checking the upload; other nodes skip the reservation until it passes
+    private LocalDateTime nextCheckAt;
+}
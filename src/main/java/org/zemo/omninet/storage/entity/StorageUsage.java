@@ -0,0 +1,26 @@
+package org.zemo.omninet.storage.entity;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Running total of what a user stores under users/<email>/; folder markers are not counted
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+public class StorageUsage {
+
+    @Id
+    private String userEmail;
+
+    private long bytesUsed;
+
+    private long objectCount;
+
+    private LocalDateTime reconciledAt;
+}
@@ -0,0 +1,15 @@
+package org.zemo.omninet.storage.exception;
+
+import lombok.Getter;
+
+@Getter
+public class StorageQuotaExceededException extends RuntimeException {
+    private final long usedBytes;
+    private final long quotaBytes;
+
+    public StorageQuotaExceededException(long usedBytes, long quotaBytes) {
+        super("Storage quota exceeded: " + usedBytes + " of " + quotaBytes + " bytes used");
+        this.usedBytes = usedBytes;
+        this.quotaBytes = quotaBytes;
+    }
+}
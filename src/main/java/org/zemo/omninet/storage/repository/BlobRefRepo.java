@@ -0,0 +1,7 @@
+package org.zemo.omninet.storage.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.zemo.omninet.storage.entity.BlobRef;
+
+public interface BlobRefRepo extends JpaRepository<BlobRef, String> {
+}
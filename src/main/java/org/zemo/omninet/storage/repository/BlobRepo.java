@@ -0,0 +1,41 @@
+package org.zemo.omninet.storage.repository;
+
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.zemo.omninet.storage.entity.Blob;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+public interface BlobRepo extends JpaRepository<Blob, String> {
+
+    @Modifying
+    @Query("update Blob b set b.refCount = b.refCount + 1, b.unreferencedSince = null " +
+            "where b.sha256 = :sha256 and b.size = :size")
+    int addReference(@Param("sha256") String sha256, @Param("size") long size);
+
+    // The grace period is assigned first so it sees the count before the decrement on every database
+    @Modifying
+    @Query("update Blob b set b.unreferencedSince = case when b.refCount <= 1 then :now else b.unreferencedSince end, " +
+            "b.refCount = b.refCount - 1 where b.sha256 = :sha256")
+    int removeReference(@Param("sha256") String sha256, @Param("now") LocalDateTime now);
+
+    // Restarts the grace period of an unreferenced blob that is about to be linked again
+    @Modifying
+    @Query("update Blob b set b.unreferencedSince = case when b.refCount <= 0 then :now else null end " +
+            "where b.sha256 = :sha256")
+    int touch(@Param("sha256") String sha256, @Param("now") LocalDateTime now);
+
+    @Query("select b.sha256 from Blob b where b.refCount <= 0 and b.unreferencedSince < :cutoff")
+    List<String> findCollectable(@Param("cutoff") LocalDateTime cutoff, Pageable pageable);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select b from Blob b where b.sha256 = :sha256")
+    Optional<Blob> findForUpdate(@Param("sha256") String sha256);
+}
@@ -0,0 +1,31 @@
+package org.zemo.omninet.storage.repository;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.zemo.omninet.storage.entity.StorageReservation;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface StorageReservationRepo extends JpaRepository<StorageReservation, String> {
+
+    @Query("select coalesce(sum(r.bytes), 0) from StorageReservation r where r.userEmail = :email")
+    long sumReservedBytes(@Param("email") String email);
+
+    @Query("select r from StorageReservation r where r.nextCheckAt is null or r.nextCheckAt <= :now order by r.createdAt")
+    List<StorageReservation> findDue(@Param("now") LocalDateTime now, Pageable pageable);
+
+    // Claims a due reservation for checking until {@code until}; only the node whose update succeeds stats it
+    @Modifying
+    @Query("update StorageReservation r set r.nextCheckAt = :until " +
+            "where r.id = :id and (r.nextCheckAt is null or r.nextCheckAt <= :now)")
+    int claim(@Param("id") String id, @Param("now") LocalDateTime now, @Param("until") LocalDateTime until);
+
+    // Only the node whose delete succeeds charges the upload
+    @Modifying
+    @Query("delete from StorageReservation r where r.id = :id")
+    int settle(@Param("id") String id);
+}
@@ -0,0 +1,42 @@
+package org.zemo.omninet.storage.repository;
+
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.zemo.omninet.storage.entity.StorageUsage;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+public interface StorageUsageRepo extends JpaRepository<StorageUsage, String> {
+
+    @Modifying
+    @Query("update StorageUsage u set u.bytesUsed = u.bytesUsed + :bytes, u.objectCount = u.objectCount + :objects " +
+            "where u.userEmail = :email")
+    int addUsage(@Param("email") String email, @Param("bytes") long bytes, @Param("objects") long objects);
+
+    // Applies a scan's correction only if no other scan reconciled the row since {@code since} was read
+    @Modifying
+    @Query("update StorageUsage u set u.bytesUsed = u.bytesUsed + :bytes, u.objectCount = u.objectCount + :objects, " +
+            "u.reconciledAt = :reconciledAt where u.userEmail = :email and u.reconciledAt = :since")
+    int applyReconciled(@Param("email") String email, @Param("bytes") long bytes, @Param("objects") long objects,
+                        @Param("reconciledAt") LocalDateTime reconciledAt, @Param("since") LocalDateTime since);
+
+    @Modifying
+    @Query("update StorageUsage u set u.bytesUsed = u.bytesUsed + :bytes, u.objectCount = u.objectCount + :objects, " +
+            "u.reconciledAt = :reconciledAt where u.userEmail = :email and u.reconciledAt is null")
+    int applyFirstReconciled(@Param("email") String email, @Param("bytes") long bytes, @Param("objects") long objects,
+                             @Param("reconciledAt") LocalDateTime reconciledAt);
+
+    @Modifying
+    @Query(value = "insert into storage_usage (user_email, bytes_used, object_count) values (:email, 0, 0) " +
+            "on conflict (user_email) do nothing", nativeQuery = true)
+    int insertIfAbsent(@Param("email") String email);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select u from StorageUsage u where u.userEmail = :email")
+    Optional<StorageUsage> findForUpdate(@Param("email") String email);
+}
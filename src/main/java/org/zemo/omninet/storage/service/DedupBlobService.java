@@ -0,0 +1,357 @@
+package org.zemo.omninet.storage.service;
+
+import io.minio.*;
+import io.minio.messages.Item;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.zemo.omninet.storage.entity.Blob;
+import org.zemo.omninet.storage.entity.BlobRef;
+import org.zemo.omninet.storage.repository.BlobRefRepo;
+import org.zemo.omninet.storage.repository.BlobRepo;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Optional content-addressed layer under StorageService. File content is stored once under
+ * "blobs/<sha256>" and a user path only holds a zero-byte object carrying the hash, while the
+ * BlobRef table counts references. Clients that already know a file's hash can link it without
+ * uploading, and blobs nobody references are garbage collected after a grace period.
+ * <p>
+ * A blob row is only inserted after its object exists, and the collector deletes the object while
+ * holding the row lock, so a reference taken with {@code addReference} always points at real content.
+ */
+@Service
+@Slf4j
+public class DedupBlobService {
+
+    public static final String BLOB_PREFIX = "blobs/";
+    private static final String TMP_PREFIX = "blobs/tmp/";
+    private static final String SHA256_META = "blob-sha256";
+    public static final String SHA256_HEADER = "x-amz-meta-" + SHA256_META;
+    private static final String SIZE_META = "blob-size";
+    private static final int GC_BATCH_SIZE = 1000;
+
+    private final MinioClient minioClient;
+    private final BlobRepo blobRepo;
+    private final BlobRefRepo blobRefRepo;
+    private final TransactionTemplate transactionTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${minio.bucket.name}")
+    private String bucketName;
+
+    @Value("${storage.dedup.enabled:false}")
+    private boolean enabled;
+
+    @Value("${storage.upload.part-size:10485760}")
+    private long uploadPartSize;
+
+    // How long an unreferenced blob (or an abandoned temp upload) is kept before it is deleted
+    @Value("${storage.dedup.gc-grace-ms:3600000}")
+    private long gcGraceMs;
+
+    public record StoredBlob(String sha256, long size) {
+    }
+
+    public DedupBlobService(MinioClient minioClient, BlobRepo blobRepo, BlobRefRepo blobRefRepo,
+                            TransactionTemplate transactionTemplate) {
+        this.minioClient = minioClient;
+        this.blobRepo = blobRepo;
+        this.blobRefRepo = blobRefRepo;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the size of the content an object stands for: the blob size for a reference
+     * object, otherwise the object's own size.
+     */
+    public static long logicalSize(long objectSize, Map<String, String> userMetadata) {
+        String size = metadataValue(userMetadata, SIZE_META);
+        if (size == null) {
+            return objectSize;
+        }
+        try {
+            return Long.parseLong(size);
+        } catch (NumberFormatException e) {
+            return objectSize;
+        }
+    }
+
+    /**
+     * Returns the hash of the blob a reference object points at, or null for a plain object.
+     * The object at the user path is the source of truth: a presigned PUT that overwrote it
+     * leaves a plain object even while its BlobRef row still exists.
+     */
+    public static String blobSha256(Map<String, String> userMetadata) {
+        return metadataValue(userMetadata, SHA256_META);
+    }
+
+    public static String blobKey(String sha256) {
+        return BLOB_PREFIX + sha256;
+    }
+
+    // Listings and stat responses may prefix user metadata keys with "X-Amz-Meta-"
+    private static String metadataValue(Map<String, String> userMetadata, String name) {
+        if (userMetadata == null) {
+            return null;
+        }
+        for (Map.Entry<String, String> entry : userMetadata.entrySet()) {
+            String key = entry.getKey().toLowerCase(Locale.ROOT);
+            if (key.equals(name) || key.endsWith("-" + name)) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Streams content into a temporary object while hashing it, then moves it to its blob key
+     * unless a blob with the same hash already exists. The caller must {@link #link} it afterwards.
+     */
+    public StoredBlob store(InputStream stream, long size, String contentType) {
+        String tmpName = TMP_PREFIX + UUID.randomUUID();
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            PutObjectArgs.Builder args = PutObjectArgs.builder()
+                    .bucket(bucketName)
+                    .object(tmpName)
+                    .stream(new DigestInputStream(stream, digest), size, size >= 0 ? -1 : uploadPartSize);
+            if (contentType != null && !contentType.isEmpty()) {
+                args.contentType(contentType);
+            }
+            minioClient.putObject(args.build());
+
+            String sha256 = HexFormat.of().formatHex(digest.digest());
+            long stored = size >= 0 ? size : minioClient.statObject(
+                    StatObjectArgs.builder().bucket(bucketName).object(tmpName).build()).size();
+
+            if (!touch(sha256)) {
+                // Compose falls back to a multipart copy for objects over the 5 GiB single-copy limit
+                minioClient.composeObject(ComposeObjectArgs.builder()
+                        .bucket(bucketName)
+                        .object(BLOB_PREFIX + sha256)
+                        .sources(List.of(ComposeSource.builder().bucket(bucketName).object(tmpName).build()))
+                        .build());
+                insertBlob(sha256, stored);
+            } else {
+                log.debug("Deduplicated upload against existing blob {}", sha256);
+            }
+            return new StoredBlob(sha256, stored);
+        } catch (Exception e) {
+            throw new RuntimeException("Error storing blob in MinIO", e);
+        } finally {
+            removeQuietly(tmpName);
+        }
+    }
+
+    /**
+     * Points {@code objectName} at an existing blob and writes the reference object at that path,
+     * releasing whatever blob the path referenced before.
+     *
+     * @return false if no blob with this hash and size exists, in which case the content must be uploaded.
+     */
+    public boolean link(String objectName, String sha256, long size, String contentType) {
+        Boolean linked = transactionTemplate.execute(status -> {
+            if (blobRepo.addReference(sha256, size) == 0) {
+                return false;
+            }
+            BlobRef previous = blobRefRepo.findById(objectName).orElse(null);
+            blobRefRepo.save(new BlobRef(objectName, sha256, size, contentType, LocalDateTime.now()));
+            if (previous != null) {
+                blobRepo.removeReference(previous.getSha256(), LocalDateTime.now());
+            }
+            return true;
+        });
+        if (!Boolean.TRUE.equals(linked)) {
+            return false;
+        }
+
+        try {
+            PutObjectArgs.Builder args = PutObjectArgs.builder()
+                    .bucket(bucketName)
+                    .object(objectName)
+                    .stream(new ByteArrayInputStream(new byte[]{}), 0, -1)
+                    .userMetadata(Map.of(SHA256_META, sha256, SIZE_META, String.valueOf(size)));
+            if (contentType != null && !contentType.isEmpty()) {
+                args.contentType(contentType);
+            }
+            minioClient.putObject(args.build());
+            return true;
+        } catch (Exception e) {
+            release(objectName);
+            throw new RuntimeException("Error writing blob reference in MinIO", e);
+        }
+    }
+
+    /**
+     * Drops the reference held by a path that was deleted or overwritten with plain content.
+     */
+    public void release(String objectName) {
+        if (!enabled) {
+            return;
+        }
+        releaseAll(List.of(objectName));
+    }
+
+    public void releaseAll(Collection<String> objectNames) {
+        if (!enabled || objectNames.isEmpty()) {
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            List<BlobRef> refs = blobRefRepo.findAllById(objectNames);
+            if (refs.isEmpty()) {
+                return;
+            }
+            blobRefRepo.deleteAll(refs);
+            LocalDateTime now = LocalDateTime.now();
+            for (BlobRef ref : refs) {
+                blobRepo.removeReference(ref.getSha256(), now);
+            }
+        });
+    }
+
+    /**
+     * Drops the references of paths that now hold plain content because a presigned PUT
+     * overwrote them, as found by a scan of the bucket. References created after the scan
+     * started are kept, since their reference object may not have been written yet.
+     */
+    public void releaseOverwritten(Collection<String> objectNames, LocalDateTime scanStarted) {
+        if (!enabled || objectNames.isEmpty()) {
+            return;
+        }
+        Integer released = transactionTemplate.execute(status -> {
+            List<BlobRef> refs = blobRefRepo.findAllById(objectNames).stream()
+                    .filter(ref -> ref.getCreatedAt().isBefore(scanStarted))
+                    .toList();
+            blobRefRepo.deleteAll(refs);
+            LocalDateTime now = LocalDateTime.now();
+            for (BlobRef ref : refs) {
+                blobRepo.removeReference(ref.getSha256(), now);
+            }
+            return refs.size();
+        });
+        if (released != null && released > 0) {
+            log.info("Released {} blob references overwritten by direct uploads", released);
+        }
+    }
+
+    /**
+     * Deletes blobs that have been unreferenced for longer than the grace period, and temp
+     * objects left behind by uploads that died half way.
+     */
+    @Scheduled(fixedDelayString = "${storage.dedup.gc-interval-ms:3600000}")
+    public void collectGarbage() {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime cutoff = LocalDateTime.now().minusNanos(gcGraceMs * 1_000_000);
+        int collected = 0;
+        try {
+            for (String sha256 : blobRepo.findCollectable(cutoff, PageRequest.of(0, GC_BATCH_SIZE))) {
+                if (collect(sha256, cutoff)) {
+                    collected++;
+                }
+            }
+
+            ZonedDateTime tmpCutoff = ZonedDateTime.now().minusNanos(gcGraceMs * 1_000_000);
+            for (Result<Item> result : minioClient.listObjects(ListObjectsArgs.builder()
+                    .bucket(bucketName)
+                    .prefix(TMP_PREFIX)
+                    .recursive(true)
+                    .build())) {
+                Item item = result.get();
+                if (item.lastModified() != null && item.lastModified().isBefore(tmpCutoff)) {
+                    removeQuietly(item.objectName());
+                }
+            }
+        } catch (Exception e) {
+            log.error("Error collecting unreferenced blobs", e);
+        }
+        if (collected > 0) {
+            log.info("Collected {} unreferenced blobs", collected);
+        }
+    }
+
+    private boolean collect(String sha256, LocalDateTime cutoff) {
+        try {
+            Boolean deleted = transactionTemplate.execute(status -> {
+                Blob blob = blobRepo.findForUpdate(sha256).orElse(null);
+                if (blob == null || blob.getRefCount() > 0 || blob.getUnreferencedSince() == null
+                        || !blob.getUnreferencedSince().isBefore(cutoff)) {
+                    return false;
+                }
+                // Removed under the row lock so a concurrent upload of the same content waits and re-copies it
+                try {
+                    minioClient.removeObject(RemoveObjectArgs.builder()
+                            .bucket(bucketName)
+                            .object(BLOB_PREFIX + sha256)
+                            .build());
+                } catch (Exception e) {
+                    throw new RuntimeException("Error removing blob " + sha256, e);
+                }
+                blobRepo.delete(blob);
+                return true;
+            });
+            return Boolean.TRUE.equals(deleted);
+        } catch (Exception e) {
+            log.error("Error collecting blob {}: {}", sha256, e.getMessage());
+            return false;
+        }
+    }
+
+    // True if a blob row exists; also restarts the grace period of an unreferenced blob
+    private boolean touch(String sha256) {
+        Integer updated = transactionTemplate.execute(status -> blobRepo.touch(sha256, LocalDateTime.now()));
+        return updated != null && updated > 0;
+    }
+
+    // Persisted rather than saved: save() would merge into a row a concurrent upload just inserted
+    private void insertBlob(String sha256, long size) {
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                entityManager.persist(new Blob(sha256, size, 0, now, now));
+                entityManager.flush();
+            });
+        } catch (RuntimeException e) {
+            // A concurrent upload of the same content inserted first; both copies are identical
+            if (!touch(sha256)) {
+                throw e;
+            }
+        }
+    }
+
+    private void removeQuietly(String objectName) {
+        try {
+            minioClient.removeObject(RemoveObjectArgs.builder()
+                    .bucket(bucketName)
+                    .object(objectName)
+                    .build());
+        } catch (Exception e) {
+            log.warn("Failed to remove temporary object {}: {}", objectName, e.getMessage());
+        }
+    }
+}
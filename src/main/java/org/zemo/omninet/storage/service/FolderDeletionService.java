@@ -0,0 +1,147 @@
+package org.zemo.omninet.storage.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.zemo.omninet.storage.dto.FolderDeletionStatus;
+import org.zemo.omninet.storage.dto.FolderDeletionStatus.State;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs recursive folder deletes in the background so huge trees do not hold a request open.
+ * Each delete is tracked as an operation the owner can poll for progress; finished operations
+ * are kept for a while and then forgotten.
+ */
+@Service
+@Slf4j
+public class FolderDeletionService {
+
+    private static final int MAX_REPORTED_FAILURES = 100;
+
+    private final StorageService storageService;
+    private final ThreadPoolExecutor executor;
+    private final Map<String, Operation> operations = new ConcurrentHashMap<>();
+
+    @Value("${storage.folder-delete.retention-ms:3600000}")
+    private long retentionMs;
+
+    private static class Operation {
+        final String id;
+        final String userEmail;
+        final String folderName;
+        final AtomicLong deleted = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        final List<String> failedKeys = new ArrayList<>();
+        final LocalDateTime startedAt = LocalDateTime.now();
+        volatile State state = State.QUEUED;
+        volatile String error;
+        volatile LocalDateTime finishedAt;
+        volatile long finishedAtMillis;
+
+        Operation(String id, String userEmail, String folderName) {
+            this.id = id;
+            this.userEmail = userEmail;
+            this.folderName = folderName;
+        }
+
+        synchronized void recordBatch(int deletedCount, List<String> failures) {
+            deleted.addAndGet(deletedCount);
+            failed.addAndGet(failures.size());
+            for (String key : failures) {
+                if (failedKeys.size() >= MAX_REPORTED_FAILURES) {
+                    break;
+                }
+                failedKeys.add(key);
+            }
+        }
+
+        void finish(State finalState, String message) {
+            error = message;
+            finishedAtMillis = System.currentTimeMillis();
+            finishedAt = LocalDateTime.now();
+            state = finalState;
+        }
+
+        synchronized FolderDeletionStatus toStatus() {
+            return new FolderDeletionStatus(id, folderName, state, deleted.get(), failed.get(),
+                    new ArrayList<>(failedKeys), error, startedAt, finishedAt);
+        }
+    }
+
+    public FolderDeletionService(StorageService storageService,
+                                 @Value("${storage.folder-delete.threads:2}") int threads,
+                                 @Value("${storage.folder-delete.queue-capacity:100}") int queueCapacity) {
+        this.storageService = storageService;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread t = new Thread(r, "folder-delete");
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Queues a recursive delete of a user folder.
+     *
+     * @throws java.util.concurrent.RejectedExecutionException if too many deletes are already queued.
+     */
+    public FolderDeletionStatus start(String userEmail, String folderName) {
+        String folderPath = storageService.buildUserFolderPath(userEmail, folderName);
+        Operation operation = new Operation(UUID.randomUUID().toString(), userEmail, folderName);
+
+        operations.put(operation.id, operation);
+        try {
+            executor.execute(() -> run(operation, folderPath));
+        } catch (RuntimeException e) {
+            operations.remove(operation.id);
+            throw e;
+        }
+        return operation.toStatus();
+    }
+
+    /**
+     * Returns the progress of one of the user's deletes, or null if it is unknown or expired.
+     */
+    public FolderDeletionStatus getStatus(String userEmail, String operationId) {
+        Operation operation = operations.get(operationId);
+        if (operation == null || !operation.userEmail.equals(userEmail)) {
+            return null;
+        }
+        return operation.toStatus();
+    }
+
+    private void run(Operation operation, String folderPath) {
+        operation.state = State.RUNNING;
+        try {
+            boolean clean = storageService.deleteFolderRecursive(folderPath, operation::recordBatch);
+            operation.finish(clean ? State.COMPLETED : State.PARTIAL, null);
+            log.info("Deleted folder {} ({} objects, {} failed)", folderPath, operation.deleted.get(), operation.failed.get());
+        } catch (Exception e) {
+            log.error("Error deleting folder {}: {}", folderPath, e.getMessage());
+            operation.finish(State.FAILED, e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedRate = 300000)
+    public void evictFinished() {
+        long cutoff = System.currentTimeMillis() - retentionMs;
+        operations.values().removeIf(op -> op.finishedAt != null && op.finishedAtMillis < cutoff);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,64 @@
+package org.zemo.omninet.storage.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.zemo.omninet.storage.dto.FileInfoResponse;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Short-lived cache of full folder listings, keyed by folder path. Used when a listing has to be
+ * sorted or filtered server-side; our own writes drop the listing of the folder they touch.
+ */
+@Component
+public class FolderListingCache {
+
+    private record Entry(List<FileInfoResponse> items, long expiresAt) {
+    }
+
+    private final Map<String, Entry> listings = new ConcurrentHashMap<>();
+
+    @Value("${storage.listing-cache.ttl-ms:10000}")
+    private long ttlMs;
+
+    @Value("${storage.listing-cache.max-folders:1000}")
+    private int maxFolders;
+
+    public List<FileInfoResponse> get(String folderPath) {
+        Entry entry = listings.get(folderPath);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt() <= System.currentTimeMillis()) {
+            listings.remove(folderPath, entry);
+            return null;
+        }
+        return entry.items();
+    }
+
+    public void put(String folderPath, List<FileInfoResponse> items) {
+        if (listings.size() >= maxFolders) {
+            evictExpired();
+            if (listings.size() >= maxFolders) {
+                listings.clear();
+            }
+        }
+        listings.put(folderPath, new Entry(List.copyOf(items), System.currentTimeMillis() + ttlMs));
+    }
+
+    // Drops the listing of the folder that directly contains the object
+    public void invalidateParentOf(String objectName) {
+        String path = objectName.endsWith("/") ? objectName.substring(0, objectName.length() - 1) : objectName;
+        int slash = path.lastIndexOf('/');
+        listings.remove(slash >= 0 ? path.substring(0, slash + 1) : "");
+    }
+
+    @Scheduled(fixedRate = 60000)
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        listings.values().removeIf(entry -> entry.expiresAt() <= now);
+    }
+}
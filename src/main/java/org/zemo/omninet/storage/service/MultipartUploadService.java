@@ -0,0 +1,200 @@
+package org.zemo.omninet.storage.service;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+import io.minio.GetPresignedObjectUrlArgs;
+import io.minio.ListMultipartUploadsResponse;
+import io.minio.ListPartsResponse;
+import io.minio.MinioClient;
+import io.minio.http.Method;
+import io.minio.messages.Part;
+import io.minio.messages.Upload;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.zemo.omninet.storage.config.MultipartMinioClient;
+import org.zemo.omninet.storage.dto.MultipartUploadResponse;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server-coordinated S3 multipart uploads. The server starts the upload, presigns part URLs in
+ * batches and completes or aborts it; the client PUTs the parts directly to MinIO in parallel and
+ * can retry a single failed part instead of restarting the whole file. No upload state is kept
+ * here: MinIO is the source of truth, which also lets any node clean up abandoned uploads.
+ */
+@Service
+@Slf4j
+public class MultipartUploadService {
+
+    private static final int MAX_PART_NUMBER = 10000;
+
+    private final MinioClient minioClient;
+    private final MultipartMinioClient multipartClient;
+    private final StorageService storageService;
+    private final StorageUsageService usageService;
+    private final DedupBlobService blobService;
+
+    @Value("${minio.bucket.name}")
+    private String bucketName;
+
+    @Value("${storage.multipart.max-parts-per-request:1000}")
+    private int maxPartsPerRequest;
+
+    @Value("${storage.multipart.stale-after-hours:24}")
+    private long staleAfterHours;
+
+    public MultipartUploadService(MinioClient minioClient, MultipartMinioClient multipartClient,
+                                  StorageService storageService, StorageUsageService usageService,
+                                  DedupBlobService blobService) {
+        this.minioClient = minioClient;
+        this.multipartClient = multipartClient;
+        this.storageService = storageService;
+        this.usageService = usageService;
+        this.blobService = blobService;
+    }
+
+    public String initiate(String userEmail, String fileName, String contentType, long expectedSize) {
+        String objectName = storageService.buildUserFilePath(userEmail, fileName);
+        usageService.checkQuota(userEmail, expectedSize);
+        try {
+            Multimap<String, String> headers = HashMultimap.create();
+            if (contentType != null && !contentType.isEmpty()) {
+                headers.put("Content-Type", contentType);
+            }
+            String uploadId = multipartClient.createMultipartUpload(bucketName, objectName, headers).result().uploadId();
+            log.info("Started multipart upload {} for {}", uploadId, objectName);
+            return uploadId;
+        } catch (Exception e) {
+            throw new RuntimeException("Error starting multipart upload in MinIO", e);
+        }
+    }
+
+    public List<MultipartUploadResponse.PartUrl> presignParts(String userEmail, String fileName, String uploadId,
+                                                              List<Integer> partNumbers) {
+        requireUploadId(uploadId);
+        if (partNumbers == null || partNumbers.isEmpty()) {
+            throw new IllegalArgumentException("At least one part number is required");
+        }
+        if (partNumbers.size() > maxPartsPerRequest) {
+            throw new IllegalArgumentException("At most " + maxPartsPerRequest + " parts can be presigned per request");
+        }
+
+        String objectName = storageService.buildUserFilePath(userEmail, fileName);
+        List<MultipartUploadResponse.PartUrl> urls = new ArrayList<>(partNumbers.size());
+        try {
+            for (Integer partNumber : partNumbers) {
+                if (partNumber == null || partNumber < 1 || partNumber > MAX_PART_NUMBER) {
+                    throw new IllegalArgumentException("Part numbers must be between 1 and " + MAX_PART_NUMBER);
+                }
+                // Presigning is a local signature computation, so a large batch costs no round-trips
+                String url = minioClient.getPresignedObjectUrl(
+                        GetPresignedObjectUrlArgs.builder()
+                                .method(Method.PUT)
+                                .bucket(bucketName)
+                                .object(objectName)
+                                .expiry(1, TimeUnit.HOURS)
+                                .extraQueryParams(Map.of(
+                                        "uploadId", uploadId,
+                                        "partNumber", String.valueOf(partNumber)))
+                                .build());
+                urls.add(new MultipartUploadResponse.PartUrl(partNumber, url));
+            }
+            return urls;
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Error generating multipart upload URLs", e);
+        }
+    }
+
+    // Parts are read back from MinIO so clients do not need to collect and send ETags
+    public void complete(String userEmail, String fileName, String uploadId) {
+        requireUploadId(uploadId);
+        String objectName = storageService.buildUserFilePath(userEmail, fileName);
+        try {
+            List<Part> parts = new ArrayList<>();
+            Integer marker = null;
+            while (true) {
+                ListPartsResponse response = multipartClient.listParts(bucketName, objectName, uploadId, marker);
+                parts.addAll(response.result().partList());
+                if (!response.result().isTruncated()) {
+                    break;
+                }
+                marker = response.result().nextPartNumberMarker();
+            }
+            if (parts.isEmpty()) {
+                throw new IllegalArgumentException("No parts have been uploaded");
+            }
+
+            Part[] completed = parts.stream()
+                    .map(p -> new Part(p.partNumber(), p.etag()))
+                    .toArray(Part[]::new);
+            ObjectMetadataCache.Metadata previous = storageService.refreshStat(objectName);
+            multipartClient.completeMultipartUpload(bucketName, objectName, uploadId, completed);
+            storageService.objectChanged(objectName);
+            blobService.release(objectName);
+            storageService.recordWrite(objectName, previous, storageService.stat(objectName).size());
+            log.info("Completed multipart upload {} for {} with {} parts", uploadId, objectName, completed.length);
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Error completing multipart upload in MinIO", e);
+        }
+    }
+
+    public void abort(String userEmail, String fileName, String uploadId) {
+        requireUploadId(uploadId);
+        String objectName = storageService.buildUserFilePath(userEmail, fileName);
+        try {
+            multipartClient.abortMultipartUpload(bucketName, objectName, uploadId);
+            log.info("Aborted multipart upload {} for {}", uploadId, objectName);
+        } catch (Exception e) {
+            throw new RuntimeException("Error aborting multipart upload in MinIO", e);
+        }
+    }
+
+    /**
+     * Aborts multipart uploads that were started but never completed, releasing their stored parts.
+     */
+    @Scheduled(fixedDelayString = "${storage.multipart.cleanup-interval-ms:3600000}")
+    public void abortStaleUploads() {
+        ZonedDateTime cutoff = ZonedDateTime.now().minusHours(staleAfterHours);
+        String keyMarker = null;
+        String uploadIdMarker = null;
+        int aborted = 0;
+        try {
+            while (true) {
+                ListMultipartUploadsResponse response =
+                        multipartClient.listMultipartUploads(bucketName, "users/", keyMarker, uploadIdMarker);
+                for (Upload upload : response.result().uploads()) {
+                    if (upload.initiated() != null && upload.initiated().isBefore(cutoff)) {
+                        multipartClient.abortMultipartUpload(bucketName, upload.objectName(), upload.uploadId());
+                        aborted++;
+                    }
+                }
+                if (!response.result().isTruncated()) {
+                    break;
+                }
+                keyMarker = response.result().nextKeyMarker();
+                uploadIdMarker = response.result().nextUploadIdMarker();
+            }
+            if (aborted > 0) {
+                log.info("Aborted {} stale multipart uploads", aborted);
+            }
+        } catch (Exception e) {
+            log.error("Error cleaning up stale multipart uploads: {}", e.getMessage(), e);
+        }
+    }
+
+    private void requireUploadId(String uploadId) {
+        if (uploadId == null || uploadId.isBlank()) {
+            throw new IllegalArgumentException("Upload id is required");
+        }
+    }
+}
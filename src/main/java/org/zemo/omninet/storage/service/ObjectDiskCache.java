@@ -0,0 +1,191 @@
+package org.zemo.omninet.storage.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Optional read-through cache of small, hot objects on local disk. Entries are keyed by object
+ * name and only served while their validator (the ETag, or the blob hash of a deduplicated file)
+ * matches the one the caller just read from MinIO, so a changed object is never served stale.
+ * The total size is kept under a budget by evicting the least recently used entries. The index
+ * lives in memory, so the directory is cleared on startup.
+ */
+@Component
+@Slf4j
+public class ObjectDiskCache {
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final Object evictionLock = new Object();
+
+    private final Counter hits;
+    private final Counter misses;
+
+    @Value("${storage.disk-cache.enabled:false}")
+    private boolean enabled;
+
+    @Value("${storage.disk-cache.dir:${java.io.tmpdir}/omninet-object-cache}")
+    private String directory;
+
+    @Value("${storage.disk-cache.max-bytes:1073741824}")
+    private long maxBytes;
+
+    // Larger objects (videos, archives) are always streamed from MinIO
+    @Value("${storage.disk-cache.max-object-bytes:52428800}")
+    private long maxObjectBytes;
+
+    private Path root;
+
+    private static class Entry {
+        final Path file;
+        final String etag;
+        final long size;
+        volatile long lastAccess = System.nanoTime();
+
+        Entry(Path file, String etag, long size) {
+            this.file = file;
+            this.etag = etag;
+            this.size = size;
+        }
+    }
+
+    public ObjectDiskCache(MeterRegistry meterRegistry) {
+        this.hits = meterRegistry.counter("storage.disk.cache.hits");
+        this.misses = meterRegistry.counter("storage.disk.cache.misses");
+        Gauge.builder("storage.disk.cache.bytes", totalBytes, AtomicLong::get).register(meterRegistry);
+    }
+
+    @PostConstruct
+    private void initialize() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            root = Paths.get(directory);
+            Files.createDirectories(root);
+            try (Stream<Path> stale = Files.list(root)) {
+                stale.forEach(this::deleteQuietly);
+            }
+            log.info("Object disk cache enabled at {} with a budget of {} bytes", root, maxBytes);
+        } catch (IOException e) {
+            log.error("Could not prepare object disk cache at {}, disabling it: {}", directory, e.getMessage());
+            enabled = false;
+        }
+    }
+
+    /**
+     * Whether an object of this size should go through the cache.
+     */
+    public boolean accepts(long size) {
+        return enabled && size >= 0 && size <= maxObjectBytes;
+    }
+
+    /**
+     * Returns the cached file for the object if it holds the version with this ETag, otherwise null.
+     */
+    public Path get(String objectName, String etag) {
+        if (!enabled) {
+            return null;
+        }
+        Entry entry = entries.get(objectName);
+        if (entry == null || etag == null || !etag.equals(entry.etag)) {
+            misses.increment();
+            return null;
+        }
+        entry.lastAccess = System.nanoTime();
+        hits.increment();
+        return entry.file;
+    }
+
+    /**
+     * Writes an object's content to the cache, replacing any older version.
+     *
+     * @return the cached file.
+     */
+    public Path put(String objectName, String etag, InputStream content) throws IOException {
+        Path tmp = root.resolve(UUID.randomUUID() + ".tmp");
+        Path file = root.resolve(UUID.randomUUID().toString());
+        long size;
+        try {
+            size = Files.copy(content, tmp);
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+
+        Entry previous = entries.put(objectName, new Entry(file, etag, size));
+        totalBytes.addAndGet(size);
+        if (previous != null) {
+            discard(previous);
+        }
+        if (totalBytes.get() > maxBytes) {
+            evict();
+        }
+        return file;
+    }
+
+    public void invalidate(String objectName) {
+        if (!enabled) {
+            return;
+        }
+        Entry entry = entries.remove(objectName);
+        if (entry != null) {
+            discard(entry);
+        }
+    }
+
+    // Evicts least recently used entries down to 90% of the budget, so eviction does not run on every put
+    private void evict() {
+        synchronized (evictionLock) {
+            if (totalBytes.get() <= maxBytes) {
+                return;
+            }
+            List<Map.Entry<String, Entry>> byAccess = new ArrayList<>(entries.entrySet());
+            byAccess.sort(Comparator.comparingLong(e -> e.getValue().lastAccess));
+
+            long target = maxBytes / 10 * 9;
+            for (Map.Entry<String, Entry> candidate : byAccess) {
+                if (totalBytes.get() <= target) {
+                    break;
+                }
+                if (entries.remove(candidate.getKey(), candidate.getValue())) {
+                    discard(candidate.getValue());
+                }
+            }
+        }
+    }
+
+    // Readers that already opened the file keep reading it after the unlink
+    private void discard(Entry entry) {
+        totalBytes.addAndGet(-entry.size);
+        deleteQuietly(entry.file);
+    }
+
+    private void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Failed to delete cached object file {}: {}", file, e.getMessage());
+        }
+    }
+}
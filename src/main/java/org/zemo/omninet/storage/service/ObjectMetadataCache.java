@@ -0,0 +1,156 @@
+package org.zemo.omninet.storage.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.ZonedDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of object metadata keyed by object name, so existence checks before presigning,
+ * deleting or creating folders usually skip the statObject round-trip. Missing objects are cached
+ * too, but for a shorter TTL since clients upload through presigned URLs we never see complete.
+ * Objects with an outstanding presigned PUT are not cached at all until the URL has expired, so
+ * a stat between signing and the upload cannot pin the old state; if too many such writes are
+ * outstanding to track one by one, the whole cache is bypassed instead. Our own writes and deletes
+ * update the cache directly; callers that need freshness across nodes use a direct stat.
+ */
+@Component
+public class ObjectMetadataCache {
+
+    /**
+     * @param etag       The object's ETag, or for a deduplicated file the hash of its blob, so the
+     *                   validator changes whenever the content does.
+     * @param blobSha256 The blob a deduplicated file references, or null for plain content.
+     */
+    public record Metadata(boolean exists, long size, String etag, ZonedDateTime lastModified, String contentType,
+                           String blobSha256) {
+        public static final Metadata ABSENT = new Metadata(false, 0, null, null, null, null);
+    }
+
+    private record Entry(Metadata metadata, long expiresAt) {
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // Object name -> time until which a presigned PUT may still land
+    private final Map<String, Long> pendingWrites = new ConcurrentHashMap<>();
+    // Time until which no object is cached, set when pendingWrites is full
+    private final AtomicLong bypassUntil = new AtomicLong();
+    private final long ttlMs;
+    private final long negativeTtlMs;
+    private final int maxSize;
+    private final int maxPendingWrites;
+    private final Counter hits;
+    private final Counter misses;
+
+    public ObjectMetadataCache(MeterRegistry meterRegistry,
+                               @Value("${storage.metadata-cache.ttl-ms:60000}") long ttlMs,
+                               @Value("${storage.metadata-cache.negative-ttl-ms:5000}") long negativeTtlMs,
+                               @Value("${storage.metadata-cache.max-size:50000}") int maxSize,
+                               @Value("${storage.metadata-cache.max-pending-writes:100000}") int maxPendingWrites) {
+        this.ttlMs = ttlMs;
+        this.negativeTtlMs = negativeTtlMs;
+        this.maxSize = maxSize;
+        this.maxPendingWrites = maxPendingWrites;
+        this.hits = meterRegistry.counter("storage.metadata.cache", "result", "hit");
+        this.misses = meterRegistry.counter("storage.metadata.cache", "result", "miss");
+        Gauge.builder("storage.metadata.cache.size", entries, Map::size).register(meterRegistry);
+    }
+
+    public Metadata get(String objectName) {
+        if (isPendingWrite(objectName)) {
+            misses.increment();
+            return null;
+        }
+        Entry entry = entries.get(objectName);
+        if (entry != null && entry.expiresAt() > System.currentTimeMillis()) {
+            hits.increment();
+            return entry.metadata();
+        }
+        if (entry != null) {
+            entries.remove(objectName, entry);
+        }
+        misses.increment();
+        return null;
+    }
+
+    public void put(String objectName, Metadata metadata) {
+        if (isPendingWrite(objectName)) {
+            return;
+        }
+        if (entries.size() >= maxSize) {
+            evictExpired();
+            if (entries.size() >= maxSize) {
+                evictSoonestExpiring();
+            }
+        }
+        long ttl = metadata.exists() ? ttlMs : negativeTtlMs;
+        entries.put(objectName, new Entry(metadata, System.currentTimeMillis() + ttl));
+    }
+
+    public void markDeleted(String objectName) {
+        put(objectName, Metadata.ABSENT);
+    }
+
+    public void invalidate(String objectName) {
+        entries.remove(objectName);
+    }
+
+    /**
+     * Stops caching an object until {@code untilMillis}, because a client may overwrite it
+     * through a presigned URL at any point before then.
+     */
+    public void expectExternalWrite(String objectName, long untilMillis) {
+        entries.remove(objectName);
+        if (pendingWrites.size() >= maxPendingWrites && !pendingWrites.containsKey(objectName)) {
+            if (bypassUntil.get() <= System.currentTimeMillis()) {
+                evictExpired();
+            }
+            if (pendingWrites.size() >= maxPendingWrites) {
+                // Untracked writes may land on any object until then, so nothing cached now can be trusted
+                bypassUntil.accumulateAndGet(untilMillis, Math::max);
+                entries.clear();
+                return;
+            }
+        }
+        pendingWrites.merge(objectName, untilMillis, Math::max);
+    }
+
+    // Drops the tenth of the cache closest to expiry, which with a fixed TTL per kind are roughly the oldest
+    private void evictSoonestExpiring() {
+        entries.entrySet().stream()
+                .sorted(Map.Entry.comparingByValue((a, b) -> Long.compare(a.expiresAt(), b.expiresAt())))
+                .limit(Math.max(1, maxSize / 10))
+                .map(Map.Entry::getKey)
+                .toList()
+                .forEach(entries::remove);
+    }
+
+    private boolean isPendingWrite(String objectName) {
+        if (bypassUntil.get() > System.currentTimeMillis()) {
+            return true;
+        }
+        Long until = pendingWrites.get(objectName);
+        if (until == null) {
+            return false;
+        }
+        if (until > System.currentTimeMillis()) {
+            return true;
+        }
+        pendingWrites.remove(objectName, until);
+        return false;
+    }
+
+    @Scheduled(fixedRate = 60000)
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        entries.values().removeIf(entry -> entry.expiresAt() <= now);
+        pendingWrites.values().removeIf(until -> until <= now);
+    }
+}
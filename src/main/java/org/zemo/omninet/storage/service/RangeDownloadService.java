@@ -0,0 +1,263 @@
+package org.zemo.omninet.storage.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Serves downloads with HTTP range support, so seeking in media and resuming an interrupted
+ * transfer only move the requested bytes. Handles {@code Range} (single and multiple ranges),
+ * {@code If-Range}, {@code If-None-Match} and {@code If-Match}; the bytes come from a
+ * {@link RangeSource} that opens exactly the requested slice of a MinIO object or local file.
+ * Local files are sent with {@link FileChannel#transferTo}, which lets the JDK skip the
+ * intermediate heap buffer where the servlet output allows it.
+ */
+@Service
+@Slf4j
+public class RangeDownloadService {
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    // Multi-range requests with more parts than this are answered with the whole file
+    @Value("${storage.download.max-ranges:16}")
+    private int maxRanges;
+
+    @FunctionalInterface
+    public interface RangeOpener {
+        /**
+         * Opens {@code length} bytes starting at {@code offset}. The caller closes the stream.
+         */
+        InputStream open(long offset, long length) throws IOException;
+    }
+
+    /**
+     * The content to serve: its total length, validators, and a way to read a slice of it.
+     *
+     * @param etag         Strong entity tag without quotes, or null if unknown.
+     * @param lastModified Last modification time, or null if unknown.
+     * @param file         A local copy of the content to transfer from, or null; if it has gone
+     *                     missing the {@code opener} is used instead.
+     */
+    public record RangeSource(long length, String etag, ZonedDateTime lastModified, RangeOpener opener, Path file) {
+
+        public RangeSource(long length, String etag, ZonedDateTime lastModified, RangeOpener opener) {
+            this(length, etag, lastModified, opener, null);
+        }
+
+        /**
+         * A local file read through a {@link FileChannel} positioned at each range.
+         */
+        public static RangeSource ofFile(Path path) throws IOException {
+            long size = Files.size(path);
+            ZonedDateTime modified = Files.getLastModifiedTime(path).toInstant().atZone(ZoneOffset.UTC);
+            String etag = Long.toHexString(size) + "-" + Long.toHexString(modified.toInstant().toEpochMilli());
+            return new RangeSource(size, etag, modified, (offset, length) -> {
+                FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+                channel.position(offset);
+                return Channels.newInputStream(channel);
+            }, path);
+        }
+    }
+
+    private record ByteRange(long start, long end) {
+        long length() {
+            return end - start + 1;
+        }
+
+        String contentRange(long total) {
+            return "bytes " + start + "-" + end + "/" + total;
+        }
+    }
+
+    /**
+     * Builds the download response for a request, honouring its range and conditional headers.
+     *
+     * @param requestHeaders The incoming request headers.
+     * @param source         The content to serve.
+     * @param contentType    The media type of the content.
+     * @param downloadName   The file name offered to the client.
+     */
+    public ResponseEntity<?> serve(HttpHeaders requestHeaders, RangeSource source,
+                                   MediaType contentType, String downloadName) {
+        String etag = source.etag() != null ? "\"" + source.etag() + "\"" : null;
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (etag != null) {
+            headers.setETag(etag);
+        }
+        if (source.lastModified() != null) {
+            headers.setLastModified(source.lastModified());
+        }
+
+        List<String> ifMatch = requestHeaders.getIfMatch();
+        if (!ifMatch.isEmpty() && !matches(ifMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).headers(headers).build();
+        }
+        List<String> ifNoneMatch = requestHeaders.getIfNoneMatch();
+        if (!ifNoneMatch.isEmpty() && matches(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(headers).build();
+        }
+
+        headers.set(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                .filename(downloadName, StandardCharsets.UTF_8).build().toString());
+
+        String rangeHeader = requestHeaders.getFirst(HttpHeaders.RANGE);
+        if (rangeHeader == null || !ifRangeHolds(requestHeaders, etag, source.lastModified())) {
+            return full(headers, source, contentType);
+        }
+
+        List<HttpRange> requested;
+        try {
+            requested = HttpRange.parseRanges(rangeHeader);
+        } catch (IllegalArgumentException e) {
+            // A malformed Range header is ignored, as if it had not been sent
+            return full(headers, source, contentType);
+        }
+        if (requested.size() > maxRanges) {
+            return full(headers, source, contentType);
+        }
+
+        List<ByteRange> ranges = new ArrayList<>(requested.size());
+        long total = 0;
+        for (HttpRange range : requested) {
+            try {
+                ByteRange byteRange = new ByteRange(range.getRangeStart(source.length()), range.getRangeEnd(source.length()));
+                ranges.add(byteRange);
+                total += byteRange.length();
+            } catch (IllegalArgumentException e) {
+                // Unsatisfiable ranges are dropped; the request fails only if none remain
+            }
+        }
+        if (ranges.isEmpty()) {
+            headers.set(HttpHeaders.CONTENT_RANGE, "bytes */" + source.length());
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE).headers(headers).build();
+        }
+        if (ranges.size() > 1 && total > source.length()) {
+            // Overlapping ranges would send more than the file itself
+            return full(headers, source, contentType);
+        }
+
+        if (ranges.size() == 1) {
+            ByteRange range = ranges.get(0);
+            headers.setContentType(contentType);
+            headers.set(HttpHeaders.CONTENT_RANGE, range.contentRange(source.length()));
+            headers.setContentLength(range.length());
+            StreamingResponseBody body = out -> writeRange(source, range, out);
+            return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT).headers(headers).body(body);
+        }
+
+        String boundary = UUID.randomUUID().toString();
+        headers.setContentType(MediaType.parseMediaType("multipart/byteranges; boundary=" + boundary));
+        StreamingResponseBody body = out -> {
+            for (ByteRange range : ranges) {
+                String partHeader = "\r\n--" + boundary + "\r\n"
+                        + HttpHeaders.CONTENT_TYPE + ": " + contentType + "\r\n"
+                        + HttpHeaders.CONTENT_RANGE + ": " + range.contentRange(source.length()) + "\r\n\r\n";
+                out.write(partHeader.getBytes(StandardCharsets.US_ASCII));
+                writeRange(source, range, out);
+            }
+            out.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+        };
+        return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT).headers(headers).body(body);
+    }
+
+    private ResponseEntity<?> full(HttpHeaders headers, RangeSource source, MediaType contentType) {
+        headers.setContentType(contentType);
+        headers.setContentLength(source.length());
+        StreamingResponseBody body = out -> writeRange(source, new ByteRange(0, source.length() - 1), out);
+        return ResponseEntity.ok().headers(headers).body(body);
+    }
+
+    private void writeRange(RangeSource source, ByteRange range, OutputStream out) throws IOException {
+        if (range.length() <= 0) {
+            return;
+        }
+        if (source.file() != null) {
+            try (FileChannel channel = FileChannel.open(source.file(), StandardOpenOption.READ)) {
+                WritableByteChannel target = Channels.newChannel(out);
+                long position = range.start();
+                long end = range.end() + 1;
+                while (position < end) {
+                    long sent = channel.transferTo(position, end - position, target);
+                    if (sent <= 0) {
+                        throw new IOException("File ended " + (end - position) + " bytes before the end of the range");
+                    }
+                    position += sent;
+                }
+                return;
+            } catch (NoSuchFileException e) {
+                log.debug("Local copy {} disappeared, reading from the source", source.file());
+            }
+        }
+        try (InputStream in = source.opener().open(range.start(), range.length())) {
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            long remaining = range.length();
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    throw new IOException("Content ended " + remaining + " bytes before the end of the range");
+                }
+                out.write(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+    }
+
+    // If-Range needs a strong validator match; a date only holds if it equals the last modification time
+    private boolean ifRangeHolds(HttpHeaders requestHeaders, String etag, ZonedDateTime lastModified) {
+        String ifRange = requestHeaders.getFirst(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return etag != null && ifRange.equals(etag);
+        }
+        if (lastModified == null) {
+            return false;
+        }
+        try {
+            long since = requestHeaders.getFirstZonedDateTime(HttpHeaders.IF_RANGE).toEpochSecond();
+            return lastModified.toEpochSecond() == since;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static boolean matches(List<String> candidates, String etag) {
+        for (String candidate : candidates) {
+            if ("*".equals(candidate)) {
+                return true;
+            }
+            String tag = candidate.startsWith("W/") ? candidate.substring(2) : candidate;
+            if (etag != null && tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
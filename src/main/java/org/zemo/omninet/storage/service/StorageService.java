@@ -1,18 +1,52 @@
 package org.zemo.omninet.storage.service;
 
 import io.minio.*;
+import io.minio.errors.ErrorResponseException;
 import io.minio.errors.MinioException;
 import io.minio.http.Method;
+import io.minio.messages.DeleteError;
+import io.minio.messages.DeleteObject;
 import io.minio.messages.Item;
 import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpHeaders;
 import org.springframework.stereotype.Service;
 import org.zemo.omninet.security.service.UserService;
+import org.zemo.omninet.storage.dto.BatchPresignResponse;
+import org.zemo.omninet.storage.dto.FileInfoResponse;
+import org.zemo.omninet.storage.dto.FileUploadRequest;
+import org.zemo.omninet.storage.dto.FolderPageResponse;
+import org.zemo.omninet.storage.dto.PresignedUrlResponse;
+import org.zemo.omninet.storage.exception.StorageQuotaExceededException;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 
 @Service
 @Slf4j
@@ -20,13 +54,50 @@ public class StorageService {
 
     private final MinioClient minioClient;
     private final UserService userService;
+    private final ObjectMetadataCache metadataCache;
+    private final FolderListingCache listingCache;
+    private final StorageUsageService usageService;
+    private final DedupBlobService blobService;
+    private final ObjectDiskCache diskCache;
 
     @Value("${minio.bucket.name}")
     private String bucketName;
 
-    public StorageService(MinioClient minioClient, UserService userService) {
+    // Part size used when streaming an upload of unknown length (MinIO minimum is 5 MiB)
+    @Value("${storage.upload.part-size:10485760}")
+    private long uploadPartSize;
+
+    // Threads used to create missing user folders after startup
+    @Value("${storage.provisioning.threads:8}")
+    private int provisioningThreads;
+
+    // Keys per RemoveObjects request when deleting a folder recursively (S3 allows at most 1000)
+    @Value("${storage.folder-delete.batch-size:1000}")
+    private int deleteBatchSize;
+
+    @Value("${storage.presign.max-batch:1000}")
+    private int maxPresignBatch;
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_DELETE_BATCH = 1000;
+    private static final String USERS_ROOT = "users/";
+    // Presigned URLs last an hour; the margin covers uploads that started just before expiry
+    private static final long PRESIGNED_WRITE_WINDOW_MS = TimeUnit.MINUTES.toMillis(75);
+
+    // Users whose root folder is known to exist
+    private final Set<String> provisionedUsers = ConcurrentHashMap.newKeySet();
+
+    public StorageService(MinioClient minioClient, UserService userService,
+                          ObjectMetadataCache metadataCache, FolderListingCache listingCache,
+                          StorageUsageService usageService, DedupBlobService blobService,
+                          ObjectDiskCache diskCache) {
         this.minioClient = minioClient;
         this.userService = userService;
+        this.metadataCache = metadataCache;
+        this.listingCache = listingCache;
+        this.usageService = usageService;
+        this.blobService = blobService;
+        this.diskCache = diskCache;
     }
 
     @PostConstruct
@@ -39,8 +110,9 @@ public class StorageService {
             if (!folderExists("system/")) {
                 createFolder("system/");
             }
-
-            createFolderForEveryUser();
+            if (!folderExists(USERS_ROOT)) {
+                createFolder(USERS_ROOT);
+            }
 
             log.info("StorageService initialization completed successfully");
         } catch (Exception e) {
@@ -76,29 +148,88 @@ public class StorageService {
         }
     }
 
-    private void createFolderForEveryUser() {
+    /**
+     * Creates the root folders of existing users in the background once the application is up.
+     * A single listing of "users/" finds the missing folders, which are then created on a small
+     * bounded pool; users who reach the API first are provisioned by {@link #ensureUserFolder}.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void provisionUserFolders() {
+        Thread worker = new Thread(this::provisionMissingUserFolders, "storage-provisioning");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    private void provisionMissingUserFolders() {
         try {
-            String root = "users/";
-            if (!folderExists(root)) {
-                createFolder(root);
+            Set<String> existing = new HashSet<>();
+            for (Result<Item> result : listDirectChildren(USERS_ROOT)) {
+                Item item = result.get();
+                if (item.isDir()) {
+                    existing.add(item.objectName());
+                }
             }
 
-            List<String> users = userService.getAllUserEmails();
-
-            for (String userEmail : users) {
-                String userFolder = root + userEmail + "/";
-                if (!folderExists(userFolder)) {
-                    createFolder(userFolder);
-                    log.info("Created folder for user: {}", userEmail);
+            List<String> missing = new ArrayList<>();
+            for (String userEmail : userService.getAllUserEmails()) {
+                if (existing.contains(USERS_ROOT + userEmail + "/")) {
+                    provisionedUsers.add(userEmail);
                 } else {
-                    log.info("Folder already exists for user: {}", userEmail);
+                    missing.add(userEmail);
+                }
+            }
+
+            if (missing.isEmpty()) {
+                log.info("All {} user folders already exist", provisionedUsers.size());
+                return;
+            }
+
+            log.info("Provisioning {} missing user folders", missing.size());
+            ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(provisioningThreads, missing.size())));
+            try {
+                for (String userEmail : missing) {
+                    pool.execute(() -> {
+                        try {
+                            ensureUserFolder(userEmail);
+                        } catch (Exception e) {
+                            log.error("Error creating folder for user {}: {}", userEmail, e.getMessage());
+                        }
+                    });
                 }
+            } finally {
+                pool.shutdown();
+            }
+            if (!pool.awaitTermination(1, TimeUnit.HOURS)) {
+                log.warn("User folder provisioning did not finish in time");
+                pool.shutdownNow();
             }
+            log.info("User folder provisioning completed");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         } catch (Exception e) {
             log.error("Error creating folders for users", e);
         }
     }
 
+    /**
+     * Makes sure the user's root folder exists, creating it on first access.
+     * Users already known to be provisioned cost a single set lookup.
+     *
+     * @param userEmail The Email of the user whose root folder to ensure.
+     */
+    public void ensureUserFolder(String userEmail) {
+        if (userEmail == null || userEmail.isEmpty() || provisionedUsers.contains(userEmail)) {
+            return;
+        }
+        String userFolder = USERS_ROOT + userEmail + "/";
+        if (folderExists(userFolder)) {
+            provisionedUsers.add(userEmail);
+        } else if (createFolder(userFolder)) {
+            provisionedUsers.add(userEmail);
+            log.info("Created folder for user: {}", userEmail);
+        }
+    }
+
     /**
      * Creates folder for a specific user in the MinIO bucket.
      *
@@ -142,24 +273,10 @@ public class StorageService {
      */
     public void deleteUserFolder(String userEmail, String folderName) {
         try {
-            if (userEmail == null || userEmail.isEmpty()) {
-                throw new IllegalArgumentException("User Email must not be null or empty");
-            }
-            if (folderName == null || folderName.isEmpty()) {
-                throw new IllegalArgumentException("Folder name must not be null or empty");
-            }
-            
-            // Validate the folder name for security
-            validatePath(folderName, "Folder name");
-            
-            // Sanitize the folder name
-            String sanitizedFolderName = sanitizeName(folderName);
-            if (sanitizedFolderName.isEmpty()) {
-                throw new IllegalArgumentException("Folder name becomes empty after sanitization");
+            String fullFolderName = buildUserFolderPath(userEmail, folderName);
+            if (!deleteFolderRecursive(fullFolderName, (deleted, failed) -> { })) {
+                throw new IllegalStateException("Some objects under the folder could not be deleted");
             }
-            
-            String fullFolderName = buildUserPath(userEmail, normalizeFolderPath(sanitizedFolderName));
-            deleteFolder(fullFolderName);
 
         } catch (Exception e) {
             log.error("Error deleting user folder '{}' for user '{}': {}", folderName, userEmail, e.getMessage());
@@ -167,6 +284,116 @@ public class StorageService {
         }
     }
 
+    /**
+     * Validates and sanitizes a folder name and resolves it inside the user's folder.
+     */
+    public String buildUserFolderPath(String userEmail, String folderName) {
+        if (userEmail == null || userEmail.isEmpty()) {
+            throw new IllegalArgumentException("User Email must not be null or empty");
+        }
+        if (folderName == null || folderName.isEmpty()) {
+            throw new IllegalArgumentException("Folder name must not be null or empty");
+        }
+
+        // Validate the folder name for security
+        validatePath(folderName, "Folder name");
+
+        // Sanitize the folder name
+        String sanitizedFolderName = sanitizeName(folderName);
+        if (sanitizedFolderName.isEmpty()) {
+            throw new IllegalArgumentException("Folder name becomes empty after sanitization");
+        }
+
+        return buildUserPath(userEmail, normalizeFolderPath(sanitizedFolderName));
+    }
+
+    /**
+     * Deletes a folder and everything under it. The recursive listing is streamed and keys are
+     * removed with one RemoveObjects request per batch; the folder marker itself is only removed
+     * once every object under it is gone, so a partially failed delete can simply be retried.
+     *
+     * @param folderName The full folder path (e.g., "users/userEmail/docs/").
+     * @param progress   Called after each batch with the number of keys deleted and the keys that failed.
+     * @return true if every object was deleted, false if some keys failed.
+     */
+    public boolean deleteFolderRecursive(String folderName, BiConsumer<Integer, List<String>> progress) {
+        if (!folderName.endsWith("/")) {
+            folderName += "/";
+        }
+        int limit = Math.max(1, Math.min(deleteBatchSize, MAX_DELETE_BATCH));
+        boolean clean = true;
+
+        try {
+            Map<String, Long> batch = new LinkedHashMap<>();
+            for (Result<Item> result : listObjectsInFolder(folderName)) {
+                Item item = result.get();
+                String key = item.objectName();
+                if (key.equals(folderName)) {
+                    continue;
+                }
+                batch.put(key, DedupBlobService.logicalSize(item.size(), item.userMetadata()));
+                if (batch.size() >= limit) {
+                    clean &= removeBatch(batch, progress);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                clean &= removeBatch(batch, progress);
+            }
+
+            if (clean) {
+                clean = removeBatch(Map.of(folderName, 0L), progress);
+            }
+            return clean;
+        } catch (Exception e) {
+            log.error("Error deleting folder '{}' recursively: {}", folderName, e.getMessage());
+            throw new RuntimeException("Error deleting folder in MinIO", e);
+        }
+    }
+
+    // RemoveObjects is lazy: the request is only sent while its error results are iterated
+    private boolean removeBatch(Map<String, Long> sizes, BiConsumer<Integer, List<String>> progress) throws Exception {
+        Set<String> keys = sizes.keySet();
+        List<DeleteObject> objects = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            objects.add(new DeleteObject(key));
+        }
+
+        Set<String> failed = new HashSet<>();
+        for (Result<DeleteError> result : minioClient.removeObjects(
+                RemoveObjectsArgs.builder()
+                        .bucket(bucketName)
+                        .objects(objects)
+                        .build())) {
+            DeleteError error = result.get();
+            failed.add(error.objectName());
+            log.warn("Failed to delete object '{}': {}", error.objectName(), error.message());
+        }
+
+        long freedBytes = 0;
+        long freedObjects = 0;
+        String owner = null;
+        List<String> deleted = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            if (!failed.contains(key)) {
+                deleted.add(key);
+                objectDeleted(key);
+                if (usageService.isTracked(key)) {
+                    owner = key;
+                    freedBytes += sizes.get(key);
+                    freedObjects++;
+                }
+            }
+        }
+        // A folder belongs to a single user, so the whole batch is charged to one ledger row
+        if (owner != null) {
+            recordUsage(owner, -freedBytes, -freedObjects);
+        }
+        blobService.releaseAll(deleted);
+        progress.accept(keys.size() - failed.size(), new ArrayList<>(failed));
+        return failed.isEmpty();
+    }
+
     /**
      * Creates a "folder" in a MinIO bucket.
      *
@@ -178,7 +405,7 @@ public class StorageService {
                 folderName += "/";
             }
             if (folderExists(folderName)) {
-                System.out.println("Folder already exists: " + folderName);
+                log.debug("Folder already exists: {}", folderName);
                 return false;
             }
             // Create a zero-byte object to represent the folder
@@ -188,13 +415,14 @@ public class StorageService {
                             .object(folderName)
                             .stream(new ByteArrayInputStream(new byte[]{}), 0, -1) // Empty stream
                             .build());
+            objectChanged(folderName);
 
-            System.out.println("Successfully created folder: " + folderName + " in bucket: " + bucketName);
+            log.info("Created folder {} in bucket {}", folderName, bucketName);
             return true;
 
         } catch (MinioException e) {
-            System.err.println("Error occurred: " + e);
-            System.err.println("HTTP trace: " + e.httpTrace());
+            log.error("Error creating folder {}: {}", folderName, e.getMessage());
+            log.debug("HTTP trace: {}", e.httpTrace());
             return false;
         } catch (Exception e) {
             throw new RuntimeException("Error creating folder in MinIO", e);
@@ -213,7 +441,7 @@ public class StorageService {
                 folderName += "/";
             }
             if (!folderExists(folderName)) {
-                System.out.println("Folder does not exist: " + folderName);
+                log.debug("Folder does not exist: {}", folderName);
                 return;
             }
             minioClient.removeObject(
@@ -221,12 +449,13 @@ public class StorageService {
                             .bucket(bucketName)
                             .object(folderName)
                             .build());
+            objectDeleted(folderName);
 
-            System.out.println("Successfully deleted folder: " + folderName + " in bucket: " + bucketName);
+            log.info("Deleted folder {} in bucket {}", folderName, bucketName);
 
         } catch (MinioException e) {
-            System.err.println("Error occurred: " + e);
-            System.err.println("HTTP trace: " + e.httpTrace());
+            log.error("Error deleting folder {}: {}", folderName, e.getMessage());
+            log.debug("HTTP trace: {}", e.httpTrace());
         } catch (Exception e) {
             throw new RuntimeException("Error deleting folder in MinIO", e);
         }
@@ -239,30 +468,10 @@ public class StorageService {
      * @return true if the folder exists, false otherwise.
      */
     public boolean folderExists(String folderName) {
-        try {
-            if (!folderName.endsWith("/")) {
-                folderName += "/";
-            }
-
-            minioClient.statObject(
-                    StatObjectArgs.builder()
-                            .bucket(bucketName)
-                            .object(folderName)
-                            .build());
-            return true;
-
-        } catch (MinioException e) {
-            // Handle specific MinIO exceptions
-            if (e.getMessage().contains("NoSuchKey") || e.getMessage().contains("does not exist")) {
-                log.debug("Folder does not exist: {}", folderName);
-                return false;
-            }
-            log.error("Error checking folder existence for {}: {}", folderName, e.getMessage());
-            return false;
-        } catch (Exception e) {
-            log.error("Unexpected error checking folder existence for {}: {}", folderName, e.getMessage());
-            return false;
+        if (!folderName.endsWith("/")) {
+            folderName += "/";
         }
+        return stat(folderName).exists();
     }
 
     /**
@@ -272,23 +481,47 @@ public class StorageService {
      * @return true if the file exists, false otherwise.
      */
     public boolean fileExists(String objectName) {
+        return stat(objectName).exists();
+    }
+
+    /**
+     * Returns the metadata of an object, from the metadata cache when possible.
+     *
+     * @param objectName The name of the object (e.g., "users/userID/Images/profile.jpg").
+     * @return the object's metadata; {@link ObjectMetadataCache.Metadata#ABSENT} if it does not exist.
+     */
+    public ObjectMetadataCache.Metadata stat(String objectName) {
+        ObjectMetadataCache.Metadata cached = metadataCache.get(objectName);
+        if (cached != null) {
+            return cached;
+        }
+
         try {
-            minioClient.statObject(
+            StatObjectResponse response = minioClient.statObject(
                     StatObjectArgs.builder()
                             .bucket(bucketName)
                             .object(objectName)
                             .build());
-            return true;
+            // A reference object is always empty, so a deduplicated file is validated by its blob hash
+            String blobSha256 = DedupBlobService.blobSha256(response.userMetadata());
+            ObjectMetadataCache.Metadata metadata = new ObjectMetadataCache.Metadata(true,
+                    DedupBlobService.logicalSize(response.size(), response.userMetadata()),
+                    blobSha256 != null ? blobSha256 : response.etag(), response.lastModified(),
+                    response.contentType(), blobSha256);
+            metadataCache.put(objectName, metadata);
+            return metadata;
+
         } catch (MinioException e) {
             if (e.getMessage().contains("NoSuchKey") || e.getMessage().contains("does not exist")) {
-                log.debug("File does not exist: {}", objectName);
-                return false;
+                log.debug("Object does not exist: {}", objectName);
+                metadataCache.put(objectName, ObjectMetadataCache.Metadata.ABSENT);
+                return ObjectMetadataCache.Metadata.ABSENT;
             }
-            log.error("Error checking file existence for {}: {}", objectName, e.getMessage());
-            return false;
+            log.error("Error checking object existence for {}: {}", objectName, e.getMessage());
+            return ObjectMetadataCache.Metadata.ABSENT;
         } catch (Exception e) {
-            log.error("Unexpected error checking file existence for {}: {}", objectName, e.getMessage());
-            return false;
+            log.error("Unexpected error checking object existence for {}: {}", objectName, e.getMessage());
+            return ObjectMetadataCache.Metadata.ABSENT;
         }
     }
 
@@ -297,9 +530,11 @@ public class StorageService {
      *
      * @param userEmail   The Email of the user who is uploading the file.
      * @param fileName The name of the file to upload. (e.g., "documents/report.pdf")
+     * @param expectedSize The size the client declared, or -1 if unknown; reserved against the user's quota
+     *                     until the upload lands, and required while quotas are enforced.
      * @return A presigned URL that can be used to upload the file.
      */
-    public String generatePresignedUploadUrl(String userEmail, String fileName) {
+    public String generatePresignedUploadUrl(String userEmail, String fileName, long expectedSize) {
         try {
             if (fileName == null || fileName.isEmpty()) {
                 throw new IllegalArgumentException("File name must not be null or empty");
@@ -317,9 +552,15 @@ public class StorageService {
             // Build the full file path
             String fullFilePath = "users/" + userEmail + "/" + sanitizedFileName;
 
-            if (fileExists(fullFilePath)) {
+            ObjectMetadataCache.Metadata previous = refreshStat(fullFilePath);
+            if (previous.exists()) {
                 log.warn("File already exists, will be overwritten: {}", fullFilePath);
             }
+            usageService.reserve(userEmail, List.of(
+                    new StorageUsageService.PendingUpload(fullFilePath, expectedSize, previous)));
+            // The client writes straight to MinIO, so stop caching what we knew about this object.
+            // A blob it referenced is released by the usage scan once the overwrite has landed.
+            expectPresignedWrite(fullFilePath);
 
             return minioClient.getPresignedObjectUrl(
                     GetPresignedObjectUrlArgs.builder()
@@ -329,11 +570,111 @@ public class StorageService {
                             .expiry(1, TimeUnit.HOURS)
                             .build()
             );
+        } catch (StorageQuotaExceededException | IllegalArgumentException e) {
+            throw e;
         } catch (Exception e) {
             throw new RuntimeException("Error generating MinIO upload URL", e);
         }
     }
 
+    /**
+     * Presigns URLs for many files of the user in one pass. Names are validated up front and
+     * reported in the response's errors instead of failing the batch, existence is only checked
+     * when asked, and the signatures are computed in parallel.
+     *
+     * @param userEmail     The Email of the user who owns the files.
+     * @param files         The files to presign, with optional sizes for the upload quota check.
+     * @param method        {@link Method#PUT} for uploads or {@link Method#GET} for downloads.
+     * @param checkExists   For downloads, report missing files; for uploads, refuse to overwrite existing files.
+     */
+    public BatchPresignResponse generatePresignedUrls(String userEmail, List<FileUploadRequest> files,
+                                                      Method method, boolean checkExists) {
+        if (files.size() > maxPresignBatch) {
+            throw new IllegalArgumentException("At most " + maxPresignBatch + " files can be presigned at once");
+        }
+        // Results and errors are keyed by file name, so a repeated name would be ambiguous
+        Set<String> fileNames = new HashSet<>();
+        for (FileUploadRequest file : files) {
+            if (!fileNames.add(String.valueOf(file.getFileName()))) {
+                throw new IllegalArgumentException("Duplicate file name in batch: " + file.getFileName());
+            }
+        }
+
+        Map<String, String> errors = new ConcurrentHashMap<>();
+        Map<String, String> objectNames = new LinkedHashMap<>();
+        Map<String, Long> declaredSizes = new HashMap<>();
+        for (FileUploadRequest file : files) {
+            try {
+                String objectName = buildUserFilePath(userEmail, file.getFileName());
+                if (method == Method.PUT && file.getSize() == null && usageService.isQuotaEnforced()) {
+                    errors.put(file.getFileName(), "File size is required");
+                    continue;
+                }
+                if (declaredSizes.containsKey(objectName)) {
+                    errors.put(file.getFileName(), "Duplicate file path in batch");
+                    continue;
+                }
+                objectNames.put(file.getFileName(), objectName);
+                declaredSizes.put(objectName, file.getSize() != null ? file.getSize() : -1);
+            } catch (IllegalArgumentException e) {
+                errors.put(String.valueOf(file.getFileName()), e.getMessage());
+            }
+        }
+
+        // Uploads need the replaced object's size for the reservation; downloads only to check or resolve blobs
+        Map<String, ObjectMetadataCache.Metadata> metadata = new ConcurrentHashMap<>();
+        if (method == Method.PUT || checkExists || blobService.isEnabled()) {
+            objectNames.values().parallelStream().forEach(objectName -> metadata.put(objectName,
+                    method == Method.PUT ? refreshStat(objectName) : stat(objectName)));
+        }
+        if (checkExists) {
+            objectNames.forEach((fileName, objectName) -> {
+                boolean exists = metadata.get(objectName).exists();
+                if (method == Method.GET && !exists) {
+                    errors.put(fileName, "File does not exist");
+                } else if (method == Method.PUT && exists) {
+                    errors.put(fileName, "File already exists");
+                }
+            });
+            objectNames.keySet().removeAll(errors.keySet());
+        }
+
+        Map<String, String> targets = new HashMap<>();
+        if (method == Method.PUT) {
+            List<StorageUsageService.PendingUpload> uploads = new ArrayList<>(objectNames.size());
+            for (String objectName : objectNames.values()) {
+                uploads.add(new StorageUsageService.PendingUpload(objectName, declaredSizes.get(objectName),
+                        metadata.get(objectName)));
+            }
+            usageService.reserve(userEmail, uploads);
+            // The client writes straight to MinIO, so stop caching what we knew about these objects
+            objectNames.values().forEach(this::expectPresignedWrite);
+        } else {
+            // Deduplicated files are downloaded straight from their blob
+            metadata.forEach((objectName, meta) -> targets.put(objectName, contentKey(objectName, meta)));
+        }
+
+        List<PresignedUrlResponse> urls = objectNames.entrySet().parallelStream()
+                .map(entry -> new PresignedUrlResponse(
+                        presign(method, targets.getOrDefault(entry.getValue(), entry.getValue())), entry.getKey()))
+                .toList();
+        return new BatchPresignResponse(urls, new LinkedHashMap<>(errors));
+    }
+
+    private String presign(Method method, String objectName) {
+        try {
+            return minioClient.getPresignedObjectUrl(
+                    GetPresignedObjectUrlArgs.builder()
+                            .method(method)
+                            .bucket(bucketName)
+                            .object(objectName)
+                            .expiry(1, TimeUnit.HOURS)
+                            .build());
+        } catch (Exception e) {
+            throw new RuntimeException("Error generating MinIO presigned URL", e);
+        }
+    }
+
     /**
      * Generates a presigned URL for downloading a file from MinIO.
      *
@@ -358,7 +699,8 @@ public class StorageService {
 
             String fullFilePath = "users/" + userEmail + "/" + sanitizedFileName;
 
-            if (!fileExists(fullFilePath)) {
+            ObjectMetadataCache.Metadata metadata = stat(fullFilePath);
+            if (!metadata.exists()) {
                 throw new IllegalArgumentException("File does not exist: " + sanitizedFileName);
             }
 
@@ -366,7 +708,7 @@ public class StorageService {
                     GetPresignedObjectUrlArgs.builder()
                             .method(Method.GET)
                             .bucket(bucketName)
-                            .object(fullFilePath)
+                            .object(contentKey(fullFilePath, metadata))
                             .expiry(1, TimeUnit.HOURS)
                             .build()
             );
@@ -399,8 +741,9 @@ public class StorageService {
             // Build the full file path
             String fullFilePath = "users/" + userEmail + "/" + sanitizedFileName;
 
-            // Check if file exists before deleting
-            if (!fileExists(fullFilePath)) {
+            // Fresh stat: the size charged back to the ledger must be the current one
+            ObjectMetadataCache.Metadata metadata = refreshStat(fullFilePath);
+            if (!metadata.exists()) {
                 throw new IllegalArgumentException("File does not exist: " + sanitizedFileName);
             }
 
@@ -409,6 +752,11 @@ public class StorageService {
                             .bucket(bucketName)
                             .object(fullFilePath)
                             .build());
+            objectDeleted(fullFilePath);
+            blobService.release(fullFilePath);
+            if (usageService.isTracked(fullFilePath)) {
+                recordUsage(fullFilePath, -metadata.size(), -1);
+            }
         } catch (Exception e) {
             throw new RuntimeException("Error deleting file from MinIO", e);
         }
@@ -434,6 +782,7 @@ public class StorageService {
                             .bucket(bucketName)
                             .prefix(folderName)
                             .recursive(true)
+                            .includeUserMetadata(blobService.isEnabled())
                             .build()
             );
 
@@ -467,6 +816,7 @@ public class StorageService {
                             .bucket(bucketName)
                             .prefix(normalizedFolder)
                             .delimiter("/")  // This ensures we only get direct children
+                            .includeUserMetadata(blobService.isEnabled())
                             .build()
             );
 
@@ -477,6 +827,220 @@ public class StorageService {
     }
 
 
+    /**
+     * Lists the direct children of a folder as {@link FileInfoResponse}s, served from the
+     * short-lived listing cache when possible.
+     *
+     * @param folderPath     The full folder path (e.g., "users/userEmail/docs/").
+     * @param relativeFolder The folder path relative to the user's root (e.g., "docs/"), used for item paths.
+     */
+    public List<FileInfoResponse> listFolder(String folderPath, String relativeFolder) {
+        List<FileInfoResponse> cached = listingCache.get(folderPath);
+        if (cached != null) {
+            return cached;
+        }
+
+        try {
+            List<FileInfoResponse> items = new ArrayList<>();
+            for (Result<Item> result : listDirectChildren(folderPath)) {
+                FileInfoResponse info = toFileInfo(result.get(), folderPath, relativeFolder);
+                if (info != null) {
+                    items.add(info);
+                }
+            }
+            listingCache.put(folderPath, items);
+            return items;
+        } catch (Exception e) {
+            throw new RuntimeException("Error listing folder contents in MinIO", e);
+        }
+    }
+
+    /**
+     * Lists one page of a folder's direct children.
+     * Name-ordered pages without a filter are read straight from MinIO with {@code startAfter}, so each
+     * page costs O(page size). Other orders and filters are applied to the cached full listing.
+     *
+     * @param continuationToken The token returned with the previous page, or null for the first page.
+     * @param sortBy            "name", "size" or "lastModified".
+     * @param order             "asc" or "desc".
+     * @param nameFilter        Case-insensitive substring the name must contain, or null.
+     * @param type              "file", "folder" or null for both.
+     */
+    public FolderPageResponse listFolderPage(String folderPath, String relativeFolder, String continuationToken,
+                                             int pageSize, String sortBy, String order, String nameFilter, String type) {
+        boolean nameOrder = sortBy == null || "name".equalsIgnoreCase(sortBy);
+        boolean ascending = order == null || !"desc".equalsIgnoreCase(order);
+        boolean filtered = (nameFilter != null && !nameFilter.isEmpty()) || (type != null && !type.isEmpty());
+        boolean storageOrder = nameOrder && ascending && !filtered;
+        String token = decodeToken(continuationToken, folderPath);
+        boolean keyToken = token != null && token.startsWith("k:");
+        if (keyToken && !storageOrder) {
+            throw new IllegalArgumentException("Invalid continuation token");
+        }
+
+        // Key tokens always continue from storage, the cached path only understands offsets
+        if (keyToken || (storageOrder && token == null && listingCache.get(folderPath) == null)) {
+            return listPageFromStorage(folderPath, relativeFolder, keyToken ? token.substring(2) : null, pageSize);
+        }
+
+        List<FileInfoResponse> items = new ArrayList<>(listFolder(folderPath, relativeFolder));
+        if (filtered) {
+            String needle = nameFilter != null ? nameFilter.toLowerCase(Locale.ROOT) : null;
+            items.removeIf(item -> (needle != null && !item.getName().toLowerCase(Locale.ROOT).contains(needle))
+                    || ("file".equalsIgnoreCase(type) && item.isFolder())
+                    || ("folder".equalsIgnoreCase(type) && !item.isFolder()));
+        }
+
+        Comparator<FileInfoResponse> comparator = switch (nameOrder ? "name" : sortBy) {
+            case "size" -> Comparator.comparingLong(FileInfoResponse::getSize);
+            case "lastModified" -> Comparator.comparing(FileInfoResponse::getLastModified);
+            default -> Comparator.comparing(FileInfoResponse::getPath);
+        };
+        items.sort(ascending ? comparator : comparator.reversed());
+
+        int offset = token != null ? Integer.parseInt(token.substring(2)) : 0;
+        int end = Math.min(items.size(), offset + pageSize);
+        List<FileInfoResponse> page = offset < end ? items.subList(offset, end) : List.of();
+        String nextToken = end < items.size() ? encodeToken("o:" + end) : null;
+        return new FolderPageResponse(new ArrayList<>(page), nextToken, pageSize);
+    }
+
+    private FolderPageResponse listPageFromStorage(String folderPath, String relativeFolder, String startAfter, int pageSize) {
+        try {
+            ListObjectsArgs.Builder args = ListObjectsArgs.builder()
+                    .bucket(bucketName)
+                    .prefix(folderPath)
+                    .delimiter("/")
+                    .maxKeys(pageSize + 1)
+                    .includeUserMetadata(blobService.isEnabled());
+            if (startAfter != null) {
+                // Skip past everything under a folder prefix, otherwise the same prefix would be returned again
+                args.startAfter(startAfter.endsWith("/")
+                        ? startAfter + new String(Character.toChars(Character.MAX_CODE_POINT))
+                        : startAfter);
+            }
+
+            List<FileInfoResponse> page = new ArrayList<>(pageSize);
+            String lastKey = null;
+            boolean hasMore = false;
+            for (Result<Item> result : minioClient.listObjects(args.build())) {
+                Item item = result.get();
+                if (page.size() == pageSize) {
+                    hasMore = true;
+                    break;
+                }
+                FileInfoResponse info = toFileInfo(item, folderPath, relativeFolder);
+                lastKey = item.objectName();
+                if (info != null) {
+                    page.add(info);
+                }
+            }
+
+            String nextToken = hasMore && lastKey != null ? encodeToken("k:" + lastKey) : null;
+            return new FolderPageResponse(page, nextToken, pageSize);
+        } catch (Exception e) {
+            throw new RuntimeException("Error listing folder contents in MinIO", e);
+        }
+    }
+
+    private FileInfoResponse toFileInfo(Item item, String folderPath, String relativeFolder) {
+        String objectName = item.objectName();
+        if (objectName.equals(folderPath)) {
+            return null;
+        }
+
+        String relativePath = objectName.substring(folderPath.length());
+        if (relativePath.isEmpty()) {
+            return null;
+        }
+
+        boolean isFolder = objectName.endsWith("/");
+        String name = isFolder ? relativePath.substring(0, relativePath.length() - 1) : relativePath;
+        if (name.contains("/")) {
+            return null;
+        }
+
+        long size = isFolder ? 0 : DedupBlobService.logicalSize(item.size(), item.userMetadata());
+        LocalDateTime lastModified = item.lastModified() != null ?
+                item.lastModified().toLocalDateTime() :
+                LocalDateTime.now();
+
+        String fullPathFromUserRoot = relativeFolder + name + (isFolder ? "/" : "");
+        if (fullPathFromUserRoot.startsWith("/")) {
+            fullPathFromUserRoot = fullPathFromUserRoot.substring(1);
+        }
+
+        return new FileInfoResponse(name, fullPathFromUserRoot, size, lastModified, isFolder);
+    }
+
+    private static String encodeToken(String token) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a continuation token, accepting only {@code k:<key under folderPath>} and {@code o:<offset>}.
+     */
+    static String decodeToken(String token, String folderPath) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+        String decoded;
+        try {
+            decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid continuation token");
+        }
+        if (decoded.startsWith("k:") && decoded.startsWith(folderPath, 2)) {
+            return decoded;
+        }
+        if (decoded.startsWith("o:") && decoded.length() > 2 && decoded.length() <= 11
+                && decoded.substring(2).chars().allMatch(Character::isDigit)
+                && Long.parseLong(decoded.substring(2)) <= Integer.MAX_VALUE) {
+            return decoded;
+        }
+        throw new IllegalArgumentException("Invalid continuation token");
+    }
+
+    /**
+     * Invalidates cached metadata and the parent folder listing after we write an object.
+     */
+    public void objectChanged(String objectName) {
+        metadataCache.invalidate(objectName);
+        listingCache.invalidateParentOf(objectName);
+        diskCache.invalidate(objectName);
+    }
+
+    private void expectPresignedWrite(String objectName) {
+        objectChanged(objectName);
+        metadataCache.expectExternalWrite(objectName, System.currentTimeMillis() + PRESIGNED_WRITE_WINDOW_MS);
+    }
+
+    private void objectDeleted(String objectName) {
+        metadataCache.markDeleted(objectName);
+        listingCache.invalidateParentOf(objectName);
+        diskCache.invalidate(objectName);
+    }
+
+    /**
+     * Charges a completed write to the owner's usage ledger, replacing {@code previous} if it existed.
+     * Ledger failures are logged rather than failing the write; the periodic scan corrects them.
+     */
+    public void recordWrite(String objectName, ObjectMetadataCache.Metadata previous, long size) {
+        try {
+            usageService.recordWrite(objectName, previous, size);
+        } catch (Exception e) {
+            log.error("Error recording storage usage for '{}': {}", objectName, e.getMessage());
+        }
+    }
+
+    private void recordUsage(String objectName, long bytes, long objects) {
+        try {
+            usageService.record(objectName, bytes, objects);
+        } catch (Exception e) {
+            log.error("Error recording storage usage for '{}': {}", objectName, e.getMessage());
+        }
+    }
+
     /**
      * Method to directly upload a file to a specific folder in the MinIO bucket.
      * This method is useful for uploading files without generating a presigned URL.
@@ -486,25 +1050,47 @@ public class StorageService {
      * @return true if the file was uploaded successfully, false if it already exists.
      */
     public boolean uploadFile(String fileName, byte[] fileData) {
+        if (fileData == null || fileData.length == 0) {
+            throw new IllegalArgumentException("File data must not be null or empty");
+        }
+        return uploadFile(fileName, new ByteArrayInputStream(fileData), fileData.length, null);
+    }
+
+    /**
+     * Streams a file into the MinIO bucket without buffering it in memory.
+     *
+     * @param fileName    The name of the file to upload (e.g., "system/logo.jpg")
+     * @param stream      The file content; read to the end but not closed
+     * @param size        The content length, or -1 if unknown (uploaded in parts of {@code storage.upload.part-size})
+     * @param contentType The content type to store, or null for MinIO's default
+     * @return true if the file was uploaded successfully.
+     */
+    public boolean uploadFile(String fileName, InputStream stream, long size, String contentType) {
         try {
             if (fileName == null || fileName.isEmpty()) {
                 throw new IllegalArgumentException("File name must not be null or empty");
             }
-
-            if (fileData == null || fileData.length == 0) {
-                throw new IllegalArgumentException("File data must not be null or empty");
+            if (stream == null) {
+                throw new IllegalArgumentException("File data must not be null");
             }
 
-            if (fileExists(fileName)) {
-                log.warn("File already exists, will be overwritten: {}", fileName);
+            boolean tracked = usageService.isTracked(fileName);
+            ObjectMetadataCache.Metadata previous = tracked ? refreshStat(fileName) : ObjectMetadataCache.Metadata.ABSENT;
+
+            PutObjectArgs.Builder args = PutObjectArgs.builder()
+                    .bucket(bucketName)
+                    .object(fileName)
+                    .stream(stream, size, size >= 0 ? -1 : uploadPartSize);
+            if (contentType != null && !contentType.isEmpty()) {
+                args.contentType(contentType);
             }
+            minioClient.putObject(args.build());
+            objectChanged(fileName);
+            blobService.release(fileName);
 
-            minioClient.putObject(
-                    PutObjectArgs.builder()
-                            .bucket(bucketName)
-                            .object(fileName)
-                            .stream(new ByteArrayInputStream(fileData), fileData.length, -1)
-                            .build());
+            if (tracked) {
+                recordWrite(fileName, previous, size >= 0 ? size : stat(fileName).size());
+            }
 
             log.info("Successfully uploaded file: {} to bucket: {}", fileName, bucketName);
             return true;
@@ -514,6 +1100,59 @@ public class StorageService {
         }
     }
 
+    /**
+     * Streams a file into the MinIO bucket from a channel of unknown length.
+     */
+    public boolean uploadFile(String fileName, ReadableByteChannel channel, String contentType) {
+        return uploadFile(fileName, Channels.newInputStream(channel), -1, contentType);
+    }
+
+    /**
+     * Streams a file into the authenticated user's folder.
+     *
+     * @param userEmail The Email of the user who is uploading the file.
+     * @param fileName  The name of the file relative to the user's folder (e.g., "documents/report.pdf")
+     */
+    public boolean uploadUserFile(String userEmail, String fileName, InputStream stream, long size, String contentType) {
+        usageService.checkQuota(userEmail, size);
+        String objectName = buildUserFilePath(userEmail, fileName);
+        if (!blobService.isEnabled()) {
+            return uploadFile(objectName, stream, size, contentType);
+        }
+
+        ObjectMetadataCache.Metadata previous = refreshStat(objectName);
+        DedupBlobService.StoredBlob blob = blobService.store(stream, size, contentType);
+        if (!blobService.link(objectName, blob.sha256(), blob.size(), contentType)) {
+            throw new IllegalStateException("Stored blob " + blob.sha256() + " disappeared before it was linked");
+        }
+        objectChanged(objectName);
+        recordWrite(objectName, previous, blob.size());
+        log.info("Successfully uploaded file: {} as blob {}", objectName, blob.sha256());
+        return true;
+    }
+
+    /**
+     * Links a file in the user's folder to content already in the blob store, so a client that
+     * hashed the file first can skip the upload.
+     *
+     * @return true if the file was linked; false if the content is unknown (or dedup is disabled) and must be uploaded.
+     */
+    public boolean linkUserFile(String userEmail, String fileName, String sha256, long size, String contentType) {
+        if (!blobService.isEnabled()) {
+            return false;
+        }
+        usageService.checkQuota(userEmail, size);
+        String objectName = buildUserFilePath(userEmail, fileName);
+
+        ObjectMetadataCache.Metadata previous = refreshStat(objectName);
+        if (!blobService.link(objectName, sha256, size, contentType)) {
+            return false;
+        }
+        objectChanged(objectName);
+        recordWrite(objectName, previous, size);
+        return true;
+    }
+
     /**
      * Method to directly download a file from a specific folder in the MinIO bucket.
      * This method is useful for downloading files without generating a presigned URL.
@@ -523,31 +1162,163 @@ public class StorageService {
      * @return byte array of the file data if the file exists, null otherwise.
      */
     public byte[] downloadFile(String fileName) {
-        try {
-            if (fileName == null || fileName.isEmpty()) {
-                throw new IllegalArgumentException("File name must not be null or empty");
+        // Validated against a fresh stat: the cached metadata may predate a presigned PUT or another node's write
+        ObjectMetadataCache.Metadata metadata = refreshStat(fileName);
+        Path cached = metadata.exists() ? cachedCopy(fileName, metadata) : null;
+        if (cached != null) {
+            try {
+                return Files.readAllBytes(cached);
+            } catch (IOException e) {
+                log.debug("Cached copy of {} unavailable, reading from MinIO: {}", fileName, e.getMessage());
             }
+        }
 
-            if (!fileExists(fileName)) {
+        try (GetObjectResponse response = openFile(fileName)) {
+            if (response == null) {
                 log.warn("File does not exist: {}", fileName);
                 return null;
             }
+            return response.readAllBytes();
+        } catch (IOException e) {
+            throw new RuntimeException("Error downloading file from MinIO", e);
+        }
+    }
 
-            GetObjectResponse response = minioClient.getObject(
+    /**
+     * Opens a file in the MinIO bucket for streaming. The caller must close the returned stream.
+     * A missing object is detected from the GET itself, so no separate stat round-trip is made;
+     * a deduplicated file is followed to its blob.
+     *
+     * @param fileName The name of the file to open (e.g., "system/logo.jpg")
+     * @return the object stream with its response headers, or null if the file does not exist.
+     */
+    public GetObjectResponse openFile(String fileName) {
+        if (fileName == null || fileName.isEmpty()) {
+            throw new IllegalArgumentException("File name must not be null or empty");
+        }
+        GetObjectResponse response = openObject(fileName);
+        String sha256 = response != null ? response.headers().get(DedupBlobService.SHA256_HEADER) : null;
+        if (sha256 == null) {
+            return response;
+        }
+        try {
+            response.close();
+        } catch (IOException e) {
+            log.debug("Error closing reference object {}: {}", fileName, e.getMessage());
+        }
+        return openObject(DedupBlobService.blobKey(sha256));
+    }
+
+    private GetObjectResponse openObject(String objectName) {
+        try {
+            return minioClient.getObject(
                     GetObjectArgs.builder()
                             .bucket(bucketName)
-                            .object(fileName)
+                            .object(objectName)
                             .build());
 
-            byte[] fileData = response.readAllBytes();
-            response.close();
-            return fileData;
+        } catch (ErrorResponseException e) {
+            if ("NoSuchKey".equals(e.errorResponse().code())) {
+                return null;
+            }
+            throw new RuntimeException("Error downloading file from MinIO", e);
+        } catch (Exception e) {
+            throw new RuntimeException("Error downloading file from MinIO", e);
+        }
+    }
+
+    /**
+     * Returns an object's metadata straight from MinIO, refreshing the cached entry. Used where a
+     * stale size or ETag would corrupt the response or the usage ledger, such as ranged downloads
+     * and writes that replace an object; the cached entry may predate another node's write.
+     */
+    public ObjectMetadataCache.Metadata refreshStat(String objectName) {
+        metadataCache.invalidate(objectName);
+        return stat(objectName);
+    }
 
+    /**
+     * Describes an object for a ranged download. Small objects are read through the local disk
+     * cache when it is enabled, so repeated downloads are served from disk instead of MinIO.
+     *
+     * @param metadata The object's current metadata from {@link #refreshStat}, whose ETag validates the cached copy.
+     */
+    public RangeDownloadService.RangeSource rangeSource(String objectName, ObjectMetadataCache.Metadata metadata) {
+        String contentKey = contentKey(objectName, metadata);
+        return new RangeDownloadService.RangeSource(metadata.size(), metadata.etag(), metadata.lastModified(),
+                (offset, length) -> openFileRange(contentKey, offset, length), cachedCopy(objectName, metadata));
+    }
+
+    // The object holding a file's bytes: its blob if it is deduplicated, otherwise the object itself
+    private static String contentKey(String objectName, ObjectMetadataCache.Metadata metadata) {
+        return metadata.blobSha256() != null ? DedupBlobService.blobKey(metadata.blobSha256()) : objectName;
+    }
+
+    // Returns a local copy of the object's current version, fetching it into the cache on a miss
+    private Path cachedCopy(String objectName, ObjectMetadataCache.Metadata metadata) {
+        if (!diskCache.accepts(metadata.size())) {
+            return null;
+        }
+        Path cached = diskCache.get(objectName, metadata.etag());
+        if (cached != null) {
+            return cached;
+        }
+
+        try (GetObjectResponse response = openObject(contentKey(objectName, metadata))) {
+            if (response == null) {
+                return null;
+            }
+            // A blob never changes, so its hash validates the copy; a plain object is checked by the ETag of this GET
+            String etag = metadata.blobSha256();
+            if (etag == null) {
+                etag = response.headers().get(HttpHeaders.ETAG);
+                etag = etag != null ? etag.replace("\"", "") : null;
+            }
+            Path file = diskCache.put(objectName, etag, response);
+            // The object changed between the stat and the read; serve this request from MinIO
+            return etag != null && etag.equals(metadata.etag()) ? file : null;
+        } catch (Exception e) {
+            log.warn("Failed to cache object {} on disk: {}", objectName, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Opens part of an object for streaming, reading only {@code length} bytes from {@code offset}.
+     * The caller must close the returned stream.
+     *
+     * @param fileName The name of the object to open (e.g., "users/userEmail/video.mp4"); for a
+     *                 deduplicated file this is its blob, see {@link #rangeSource}.
+     */
+    public InputStream openFileRange(String fileName, long offset, long length) {
+        try {
+            return minioClient.getObject(
+                    GetObjectArgs.builder()
+                            .bucket(bucketName)
+                            .object(fileName)
+                            .offset(offset)
+                            .length(length)
+                            .build());
         } catch (Exception e) {
             throw new RuntimeException("Error downloading file from MinIO", e);
         }
     }
 
+    /**
+     * Copies a stream with a fixed-size buffer so memory per transfer stays constant.
+     */
+    public static long copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        long total = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+            total += read;
+        }
+        out.flush();
+        return total;
+    }
+
     /**
      * Normalizes a folder path by ensuring it ends with "/" and is properly formatted.
      */
@@ -583,6 +1354,24 @@ public class StorageService {
         return "users/" + userEmail + "/" + normalizedPath;
     }
 
+    /**
+     * Validates and sanitizes a file name and resolves it inside the user's folder.
+     */
+    public String buildUserFilePath(String userEmail, String fileName) {
+        if (fileName == null || fileName.isEmpty()) {
+            throw new IllegalArgumentException("File name must not be null or empty");
+        }
+
+        validatePath(fileName, "File name");
+
+        String sanitizedFileName = sanitizeName(fileName);
+        if (sanitizedFileName.isEmpty()) {
+            throw new IllegalArgumentException("File name becomes empty after sanitization");
+        }
+
+        return "users/" + userEmail + "/" + sanitizedFileName;
+    }
+
     /**
      * Validates and sanitizes a path to prevent directory traversal attacks.
      * 
@@ -0,0 +1,350 @@
+package org.zemo.omninet.storage.service;
+
+import io.minio.ListObjectsArgs;
+import io.minio.MinioClient;
+import io.minio.Result;
+import io.minio.StatObjectArgs;
+import io.minio.StatObjectResponse;
+import io.minio.errors.ErrorResponseException;
+import io.minio.messages.Item;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.zemo.omninet.storage.dto.StorageUsageResponse;
+import org.zemo.omninet.storage.entity.StorageReservation;
+import org.zemo.omninet.storage.entity.StorageUsage;
+import org.zemo.omninet.storage.exception.StorageQuotaExceededException;
+import org.zemo.omninet.storage.repository.StorageReservationRepo;
+import org.zemo.omninet.storage.repository.StorageUsageRepo;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Per-user storage usage ledger. Uploads and deletes that go through the server adjust the
+ * ledger as they happen, so usage and quota checks are a single row lookup. Presigned PUTs,
+ * which the server does not see, reserve their declared size when the URL is signed and are
+ * charged their real size once the object lands; any drift is corrected by a periodic scan of
+ * "users/". Deduplicated files are charged their full size to every user that references them.
+ */
+@Service
+@Slf4j
+public class StorageUsageService {
+
+    private static final String USERS_ROOT = "users/";
+    private static final int RELEASE_BATCH_SIZE = 1000;
+    // Presigned URLs last an hour; the margin covers uploads that started just before expiry
+    private static final Duration RESERVATION_TTL = Duration.ofMinutes(75);
+    private static final int SETTLE_BATCH_SIZE = 100;
+
+    public record PendingUpload(String objectName, long bytes, ObjectMetadataCache.Metadata previous) {
+    }
+
+    private final MinioClient minioClient;
+    private final StorageUsageRepo usageRepo;
+    private final StorageReservationRepo reservationRepo;
+    private final DedupBlobService blobService;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${minio.bucket.name}")
+    private String bucketName;
+
+    // 0 disables the quota
+    @Value("${storage.quota.default-bytes:5368709120}")
+    private long defaultQuotaBytes;
+
+    // How long a node owns a reservation it is checking; uploads still pending are checked again after it
+    @Value("${storage.quota.reservation-recheck-ms:300000}")
+    private long reservationRecheckMs;
+
+    public StorageUsageService(MinioClient minioClient, StorageUsageRepo usageRepo,
+                               StorageReservationRepo reservationRepo, DedupBlobService blobService,
+                               TransactionTemplate transactionTemplate) {
+        this.minioClient = minioClient;
+        this.usageRepo = usageRepo;
+        this.reservationRepo = reservationRepo;
+        this.blobService = blobService;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    /**
+     * Whether the object counts towards a user's usage. Folder markers and objects outside
+     * "users/" are not tracked.
+     */
+    public boolean isTracked(String objectName) {
+        return ownerOf(objectName) != null && !objectName.endsWith("/");
+    }
+
+    /**
+     * Adjusts the owner's usage for an object that was written, replacing {@code previous} if it existed.
+     */
+    public void recordWrite(String objectName, ObjectMetadataCache.Metadata previous, long size) {
+        if (previous.exists()) {
+            record(objectName, size - previous.size(), 0);
+        } else {
+            record(objectName, size, 1);
+        }
+    }
+
+    /**
+     * Adds a delta to the usage of the user owning {@code objectName}.
+     * A concurrent first write for a new user may lose the insert race; the next scan repairs it.
+     */
+    @Transactional
+    public void record(String objectName, long bytes, long objects) {
+        String owner = ownerOf(objectName);
+        if (owner == null || (bytes == 0 && objects == 0)) {
+            return;
+        }
+        if (usageRepo.addUsage(owner, bytes, objects) == 0) {
+            usageRepo.save(new StorageUsage(owner, Math.max(0, bytes), Math.max(0, objects), null));
+        }
+    }
+
+    public StorageUsageResponse getUsage(String userEmail) {
+        StorageUsage usage = usageRepo.findById(userEmail).orElse(null);
+        if (usage == null) {
+            return new StorageUsageResponse(0, 0, defaultQuotaBytes, null);
+        }
+        return new StorageUsageResponse(Math.max(0, usage.getBytesUsed()), Math.max(0, usage.getObjectCount()),
+                defaultQuotaBytes, usage.getReconciledAt());
+    }
+
+    public boolean isQuotaEnforced() {
+        return defaultQuotaBytes > 0;
+    }
+
+    /**
+     * Rejects a write that would take the user over their quota. Space reserved by outstanding
+     * presigned uploads counts as used.
+     *
+     * @param incomingBytes the size about to be written, or -1 if unknown (only rejects users already at their quota)
+     */
+    public void checkQuota(String userEmail, long incomingBytes) {
+        if (defaultQuotaBytes <= 0) {
+            return;
+        }
+        long used = usageRepo.findById(userEmail).map(StorageUsage::getBytesUsed).orElse(0L)
+                + reservationRepo.sumReservedBytes(userEmail);
+        boolean exceeded = incomingBytes > 0 ? used + incomingBytes > defaultQuotaBytes : used >= defaultQuotaBytes;
+        if (exceeded) {
+            throw new StorageQuotaExceededException(used, defaultQuotaBytes);
+        }
+    }
+
+    /**
+     * Checks the quota for presigned uploads and reserves their declared sizes until they land.
+     * The usage row is created if needed and locked meanwhile, so concurrent presigns cannot share
+     * the same headroom.
+     *
+     * @throws IllegalArgumentException if the quota is enforced and an upload did not declare its size.
+     */
+    public void reserve(String userEmail, List<PendingUpload> uploads) {
+        if (uploads.isEmpty()) {
+            return;
+        }
+        long total = 0;
+        for (PendingUpload upload : uploads) {
+            if (upload.bytes() < 0 && isQuotaEnforced()) {
+                throw new IllegalArgumentException("File size is required for presigned uploads");
+            }
+            total += Math.max(0, upload.bytes());
+        }
+        long incoming = total;
+        transactionTemplate.executeWithoutResult(status -> {
+            usageRepo.insertIfAbsent(userEmail);
+            usageRepo.findForUpdate(userEmail);
+            checkQuota(userEmail, incoming);
+            LocalDateTime now = LocalDateTime.now();
+            List<StorageReservation> reservations = new ArrayList<>(uploads.size());
+            for (PendingUpload upload : uploads) {
+                reservations.add(new StorageReservation(null, userEmail, upload.objectName(),
+                        Math.max(0, upload.bytes()), upload.previous().exists() ? upload.previous().size() : -1,
+                        now, now.plus(RESERVATION_TTL), null));
+            }
+            reservationRepo.saveAll(reservations);
+        });
+    }
+
+    /**
+     * Charges presigned uploads that have landed and drops reservations whose URL expired unused.
+     * Due reservations are read oldest first in pages and claimed before they are statted, so each
+     * upload is checked by one node per recheck interval; the charge itself is claimed by deleting it.
+     */
+    @Scheduled(fixedDelayString = "${storage.quota.reservation-sweep-ms:60000}")
+    public void settleReservations() {
+        int settled = 0;
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            LocalDateTime until = now.plus(Duration.ofMillis(reservationRecheckMs));
+            List<StorageReservation> due;
+            do {
+                due = reservationRepo.findDue(now, PageRequest.of(0, SETTLE_BATCH_SIZE));
+                for (StorageReservation reservation : due) {
+                    if (settleReservation(reservation, now, until)) {
+                        settled++;
+                    }
+                }
+                // Claimed rows are no longer due, so the next query returns the following page
+            } while (due.size() == SETTLE_BATCH_SIZE);
+        } catch (Exception e) {
+            log.error("Error settling presigned upload reservations", e);
+        }
+        if (settled > 0) {
+            log.debug("Charged {} presigned uploads to the usage ledger", settled);
+        }
+    }
+
+    private boolean settleReservation(StorageReservation reservation, LocalDateTime now, LocalDateTime until) {
+        Integer claimed = transactionTemplate.execute(status -> reservationRepo.claim(reservation.getId(), now, until));
+        if (claimed == null || claimed == 0) {
+            return false;
+        }
+
+        StatObjectResponse stat;
+        try {
+            stat = statObject(reservation.getObjectName());
+        } catch (Exception e) {
+            log.warn("Could not check presigned upload {}: {}", reservation.getObjectName(), e.getMessage());
+            return false;
+        }
+        boolean landed = stat != null && !stat.lastModified().toInstant()
+                .isBefore(reservation.getCreatedAt().atZone(ZoneId.systemDefault()).toInstant());
+        if (!landed && reservation.getExpiresAt().isAfter(now)) {
+            return false;
+        }
+
+        long size = landed ? DedupBlobService.logicalSize(stat.size(), stat.userMetadata()) : 0;
+        Boolean charged = transactionTemplate.execute(status -> {
+            if (reservationRepo.settle(reservation.getId()) == 0 || !landed) {
+                return false;
+            }
+            if (reservation.getPreviousSize() >= 0) {
+                record(reservation.getObjectName(), size - reservation.getPreviousSize(), 0);
+            } else {
+                record(reservation.getObjectName(), size, 1);
+            }
+            return true;
+        });
+        return Boolean.TRUE.equals(charged);
+    }
+
+    // Null if the object does not exist
+    private StatObjectResponse statObject(String objectName) throws Exception {
+        try {
+            return minioClient.statObject(StatObjectArgs.builder().bucket(bucketName).object(objectName).build());
+        } catch (ErrorResponseException e) {
+            if ("NoSuchKey".equals(e.errorResponse().code())) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Recomputes every user's usage from a single streamed listing of "users/". Keys are listed
+     * in order, so each user's objects are contiguous and only one running total is held at a time.
+     * Each total is applied as a delta against the user's row as it stood when their listing
+     * began, so writes recorded while the scan runs are kept. The delta is only applied if no
+     * other node reconciled the row in the meantime, so running the job on every node charges
+     * each correction once. The same pass releases blob
+     * references of files that presigned PUTs overwrote with plain content.
+     */
+    @Scheduled(cron = "${storage.usage.reconcile-cron:0 30 3 * * ?}")
+    public void reconcile() {
+        try {
+            LocalDateTime scanStarted = LocalDateTime.now();
+            List<String> plainObjects = new ArrayList<>();
+            Set<String> seen = new HashSet<>();
+            String owner = null;
+            StorageUsage start = null;
+            long bytes = 0;
+            long objects = 0;
+
+            for (Result<Item> result : minioClient.listObjects(ListObjectsArgs.builder()
+                    .bucket(bucketName)
+                    .prefix(USERS_ROOT)
+                    .recursive(true)
+                    .includeUserMetadata(true)
+                    .build())) {
+                Item item = result.get();
+                String itemOwner = ownerOf(item.objectName());
+                if (itemOwner == null) {
+                    continue;
+                }
+                if (!itemOwner.equals(owner)) {
+                    if (owner != null) {
+                        saveReconciled(owner, start, bytes, objects);
+                    }
+                    seen.add(itemOwner);
+                    owner = itemOwner;
+                    start = usageRepo.findById(itemOwner).orElse(null);
+                    bytes = 0;
+                    objects = 0;
+                }
+                if (!item.objectName().endsWith("/")) {
+                    bytes += DedupBlobService.logicalSize(item.size(), item.userMetadata());
+                    objects++;
+                    if (blobService.isEnabled() && DedupBlobService.blobSha256(item.userMetadata()) == null) {
+                        plainObjects.add(item.objectName());
+                        if (plainObjects.size() >= RELEASE_BATCH_SIZE) {
+                            blobService.releaseOverwritten(plainObjects, scanStarted);
+                            plainObjects.clear();
+                        }
+                    }
+                }
+            }
+            blobService.releaseOverwritten(plainObjects, scanStarted);
+            if (owner != null) {
+                saveReconciled(owner, start, bytes, objects);
+            }
+
+            for (StorageUsage usage : usageRepo.findAll()) {
+                if (!seen.contains(usage.getUserEmail())) {
+                    saveReconciled(usage.getUserEmail(), usage, 0, 0);
+                }
+            }
+            log.info("Reconciled storage usage for {} users", seen.size());
+        } catch (Exception e) {
+            log.error("Error reconciling storage usage", e);
+        }
+    }
+
+    private void saveReconciled(String userEmail, StorageUsage start, long bytes, long objects) {
+        long bytesDelta = bytes - (start != null ? start.getBytesUsed() : 0);
+        long objectsDelta = objects - (start != null ? start.getObjectCount() : 0);
+        LocalDateTime now = LocalDateTime.now();
+        transactionTemplate.executeWithoutResult(status -> {
+            int updated;
+            if (start == null) {
+                updated = usageRepo.existsById(userEmail) ? 0 : -1;
+            } else if (start.getReconciledAt() == null) {
+                updated = usageRepo.applyFirstReconciled(userEmail, bytesDelta, objectsDelta, now);
+            } else {
+                updated = usageRepo.applyReconciled(userEmail, bytesDelta, objectsDelta, now, start.getReconciledAt());
+            }
+            if (updated < 0) {
+                usageRepo.save(new StorageUsage(userEmail, bytes, objects, now));
+            } else if (updated == 0) {
+                log.debug("Usage of {} was reconciled elsewhere during the scan, skipping", userEmail);
+            }
+        });
+    }
+
+    private static String ownerOf(String objectName) {
+        if (objectName == null || !objectName.startsWith(USERS_ROOT)) {
+            return null;
+        }
+        int end = objectName.indexOf('/', USERS_ROOT.length());
+        return end > USERS_ROOT.length() ? objectName.substring(USERS_ROOT.length(), end) : null;
+    }
+}
@@ -0,0 +1,101 @@
+package org.zemo.omninet.chat.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.security.Principal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class InboundRateLimiterTest {
+
+    private final MessageChannel channel = mock(MessageChannel.class);
+    private SimpMessagingTemplate broker;
+    private SimpleMeterRegistry registry;
+    private InboundRateLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        broker = mock(SimpMessagingTemplate.class);
+        registry = new SimpleMeterRegistry();
+        // One frame per second; bursts of 3 for chat.send and 2 for everything without its own limit
+        limiter = new InboundRateLimiter(registry, broker, 1, 3, 1, 3, 1, 3, 1, 2);
+    }
+
+    @Test
+    void allowsTheBurstThenLimits() {
+        for (int i = 0; i < 3; i++) {
+            assertThat(limiter.preSend(send("s1", "/app/chat.send"), channel)).isNotNull();
+        }
+        assertThat(limiter.preSend(send("s1", "/app/chat.send"), channel)).isNull();
+        assertThat(registry.counter("chat.inbound.rate.limited", "destination", "/app/chat.send").count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void keepsCallersApart() {
+        for (int i = 0; i < 3; i++) {
+            limiter.preSend(send("s1", "/app/chat.send"), channel);
+        }
+
+        assertThat(limiter.preSend(send("s1", "/app/chat.send"), channel)).isNull();
+        assertThat(limiter.preSend(send("s2", "/app/chat.send"), channel)).isNotNull();
+    }
+
+    @Test
+    void keepsConfiguredDestinationsApart() {
+        for (int i = 0; i < 3; i++) {
+            limiter.preSend(send("s1", "/app/chat.send"), channel);
+        }
+
+        assertThat(limiter.preSend(send("s1", "/app/chat.typing"), channel)).isNotNull();
+    }
+
+    @Test
+    void sharesOneBucketAcrossUnconfiguredDestinations() {
+        assertThat(limiter.preSend(send("s1", "/app/a"), channel)).isNotNull();
+        assertThat(limiter.preSend(send("s1", "/app/b"), channel)).isNotNull();
+        assertThat(limiter.preSend(send("s1", "/app/c"), channel)).isNull();
+        assertThat(registry.counter("chat.inbound.rate.limited", "destination", "other").count()).isEqualTo(1);
+    }
+
+    @Test
+    void notifiesTheUserOnceWhileFlooding() {
+        for (int i = 0; i < 10; i++) {
+            limiter.preSend(send("s1", "/app/chat.send"), channel);
+        }
+
+        verify(broker, times(1)).convertAndSendToUser(eq("alice"), eq("/queue/errors"), anyString());
+    }
+
+    @Test
+    void ignoresFramesOtherThanSend() {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        accessor.setSessionId("s1");
+        accessor.setDestination("/app/chat.send");
+        Message<byte[]> subscribe = MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(limiter.preSend(subscribe, channel)).isNotNull();
+        }
+    }
+
+    private static Message<byte[]> send(String sessionId, String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setDestination(destination);
+        Principal user = () -> "alice";
+        accessor.setUser(user);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+}
@@ -0,0 +1,192 @@
+package org.zemo.omninet.chat.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.zemo.omninet.chat.dto.MessageView;
+import org.zemo.omninet.chat.mq.MessageQueueService;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class SlowConsumerPolicyTest {
+
+    private static final String SESSION_ID = "s1";
+    private static final long SOFT_LIMIT = 200;
+    private static final long HARD_LIMIT = 400;
+
+    private MessageQueueService mq;
+    private MessageChannel channel;
+    private MessageHandler handler;
+    private WebSocketSession session;
+    private WebSocketHandler decorated;
+    private WebSocketSession wrapped;
+    private SlowConsumerPolicy policy;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        mq = mock(MessageQueueService.class);
+        channel = mock(MessageChannel.class);
+        handler = mock(MessageHandler.class);
+        BinaryPayloadNegotiator negotiator = new BinaryPayloadNegotiator(new ObjectMapper().findAndRegisterModules(), registry);
+        policy = new SlowConsumerPolicy(mq, negotiator, registry, SOFT_LIMIT, HARD_LIMIT);
+
+        session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn(SESSION_ID);
+        WebSocketHandler delegate = mock(WebSocketHandler.class);
+        decorated = policy.decorate(delegate);
+        decorated.afterConnectionEstablished(session);
+
+        ArgumentCaptor<WebSocketSession> captor = ArgumentCaptor.forClass(WebSocketSession.class);
+        verify(delegate).afterConnectionEstablished(captor.capture());
+        wrapped = captor.getValue();
+    }
+
+    @Test
+    void countsBytesUntilTheFrameIsWritten() throws Exception {
+        Message<byte[]> message = message("/queue/read-b@x.com", "{\"myEmail\":\"a@x.com\"}");
+
+        assertThat(policy.preSend(message, channel)).isSameAs(message);
+        policy.beforeHandle(message, channel, handler);
+        policy.afterMessageHandled(message, channel, handler, null);
+        assertThat(policy.getBufferedBytes(SESSION_ID)).isEqualTo(message.getPayload().length);
+
+        wrapped.sendMessage(frame(message.getPayload()));
+        assertThat(policy.getBufferedBytes(SESSION_ID)).isZero();
+    }
+
+    @Test
+    void releasesBytesOfMessagesThatWereNeverSent() {
+        Message<byte[]> message = message("/queue/read-b@x.com", "{\"myEmail\":\"a@x.com\"}");
+
+        policy.preSend(message, channel);
+        policy.afterSendCompletion(message, channel, false, null);
+
+        assertThat(policy.getBufferedBytes(SESSION_ID)).isZero();
+    }
+
+    @Test
+    void coalescesTypingEventsOverTheSoftLimitAndSendsTheLatestOnceDrained() {
+        Message<byte[]> backlog = chatMessage(250);
+        policy.preSend(backlog, channel);
+
+        Message<byte[]> first = typing("a@x.com", true);
+        Message<byte[]> second = typing("a@x.com", false);
+        assertThat(policy.preSend(first, channel)).isNull();
+        assertThat(policy.preSend(second, channel)).isNull();
+        verify(channel, never()).send(any());
+
+        policy.afterSendCompletion(backlog, channel, false, null);
+
+        verify(channel).send(second);
+        verify(channel, never()).send(first);
+    }
+
+    @Test
+    void keepsTypingEventsFromDifferentSendersApart() {
+        Message<byte[]> backlog = chatMessage(250);
+        policy.preSend(backlog, channel);
+
+        Message<byte[]> fromA = typing("a@x.com", true);
+        Message<byte[]> fromC = typing("c@x.com", true);
+        policy.preSend(fromA, channel);
+        policy.preSend(fromC, channel);
+        policy.afterSendCompletion(backlog, channel, false, null);
+
+        verify(channel).send(fromA);
+        verify(channel).send(fromC);
+    }
+
+    @Test
+    void passesTypingEventsUnderTheSoftLimit() {
+        Message<byte[]> event = typing("a@x.com", true);
+
+        assertThat(policy.preSend(event, channel)).isSameAs(event);
+    }
+
+    @Test
+    void disconnectsAndSpillsOverTheHardLimit() throws Exception {
+        policy.preSend(chatMessage(300), channel);
+
+        Message<byte[]> overflow = chatMessage(150);
+        assertThat(policy.preSend(overflow, channel)).isNull();
+
+        verify(session).close(CloseStatus.SESSION_NOT_RELIABLE);
+        verify(mq).publishUndelivered(any(MessageView.class));
+    }
+
+    @Test
+    void spillsMessagesStillBufferedWhenTheSessionCloses() throws Exception {
+        Message<byte[]> message = chatMessage(100);
+        policy.preSend(message, channel);
+        policy.beforeHandle(message, channel, handler);
+        policy.afterMessageHandled(message, channel, handler, null);
+
+        decorated.afterConnectionClosed(session, CloseStatus.GOING_AWAY);
+
+        verify(mq).publishUndelivered(any(MessageView.class));
+        assertThat(policy.getBufferedBytes(SESSION_ID)).isZero();
+    }
+
+    @Test
+    void doesNotSpillMessagesAlreadyWritten() throws Exception {
+        Message<byte[]> message = chatMessage(100);
+        policy.preSend(message, channel);
+        policy.beforeHandle(message, channel, handler);
+        wrapped.sendMessage(frame(message.getPayload()));
+        policy.afterMessageHandled(message, channel, handler, null);
+
+        decorated.afterConnectionClosed(session, CloseStatus.NORMAL);
+
+        verify(mq, never()).publishUndelivered(any());
+    }
+
+    @Test
+    void matchesFramesByTheirBody() {
+        byte[] body = "hello".getBytes(StandardCharsets.UTF_8);
+
+        assertThat(SlowConsumerPolicy.carries("MESSAGE\n\nhello\0".getBytes(StandardCharsets.UTF_8), body)).isTrue();
+        assertThat(SlowConsumerPolicy.carries("MESSAGE\n\nhello".getBytes(StandardCharsets.UTF_8), body)).isFalse();
+        assertThat(SlowConsumerPolicy.carries("MESSAGE\n\nhullo\0".getBytes(StandardCharsets.UTF_8), body)).isFalse();
+        assertThat(SlowConsumerPolicy.carries("lo\0".getBytes(StandardCharsets.UTF_8), body)).isFalse();
+    }
+
+    // A chat message for b@x.com whose payload is padded to roughly the given size
+    private static Message<byte[]> chatMessage(int size) {
+        String content = "x".repeat(Math.max(0, size - 60));
+        return message("/queue/messages-b@x.com",
+                "{\"senderEmail\":\"a@x.com\",\"receiverEmail\":\"b@x.com\",\"content\":\"" + content + "\"}");
+    }
+
+    private static Message<byte[]> typing(String from, boolean typing) {
+        return message("/queue/typing-b@x.com",
+                "{\"fromEmail\":\"" + from + "\",\"toEmail\":\"b@x.com\",\"typing\":" + typing + "}");
+    }
+
+    private static Message<byte[]> message(String destination, String json) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(SESSION_ID);
+        accessor.setDestination(destination);
+        return MessageBuilder.createMessage(json.getBytes(StandardCharsets.UTF_8), accessor.getMessageHeaders());
+    }
+
+    private static TextMessage frame(byte[] body) {
+        return new TextMessage("MESSAGE\ndestination:/queue/x\n\n" + new String(body, StandardCharsets.UTF_8) + "\0");
+    }
+}
@@ -0,0 +1,60 @@
+package org.zemo.omninet.security.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BloomFilterTest {
+
+    @Test
+    void neverReturnsAFalseNegative() {
+        BloomFilter filter = new BloomFilter(1000, 0.01);
+        List<String> ids = IntStream.range(0, 1000).mapToObj(i -> UUID.randomUUID().toString()).toList();
+
+        ids.forEach(filter::put);
+
+        assertThat(ids).allMatch(filter::mightContain);
+    }
+
+    @Test
+    void keepsFalsePositivesNearTheConfiguredRate() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        IntStream.range(0, 10_000).forEach(i -> filter.put("revoked-" + i));
+
+        long falsePositives = IntStream.range(0, 100_000)
+                .filter(i -> filter.mightContain("live-" + i))
+                .count();
+
+        // Expected around 1%; allow generous headroom so the test is not flaky
+        assertThat(falsePositives).isLessThan(3_000);
+    }
+
+    @Test
+    void emptyFilterContainsNothing() {
+        BloomFilter filter = new BloomFilter(100, 0.001);
+
+        assertThat(filter.mightContain("anything")).isFalse();
+        assertThat(filter.mightContain("")).isFalse();
+    }
+
+    @Test
+    void toleratesDegenerateSizes() {
+        BloomFilter filter = new BloomFilter(0, 0.5);
+        filter.put("a");
+
+        assertThat(filter.mightContain("a")).isTrue();
+    }
+
+    @Test
+    void concurrentPutsAreAllVisible() {
+        BloomFilter filter = new BloomFilter(50_000, 0.001);
+
+        IntStream.range(0, 50_000).parallel().forEach(i -> filter.put("token-" + i));
+
+        assertThat(IntStream.range(0, 50_000)).allMatch(i -> filter.mightContain("token-" + i));
+    }
+}
@@ -0,0 +1,85 @@
+package org.zemo.omninet.security.util;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ExpiryWheelTest {
+
+    private static final long TICK = 1000;
+
+    private final List<String> expired = new ArrayList<>();
+    private ExpiryWheel wheel;
+    private long start;
+
+    @BeforeEach
+    void setUp() {
+        wheel = new ExpiryWheel(8, TICK);
+        // Start of the wheel's current tick, so deadlines land on predictable slots
+        start = System.currentTimeMillis() / TICK * TICK;
+    }
+
+    @Test
+    void expiresEntriesOnceTheirDeadlinePasses() {
+        wheel.schedule(start + 2500, () -> expired.add("a"));
+
+        assertThat(wheel.advance(start + 1000)).isZero();
+        assertThat(wheel.advance(start + 2000)).isZero();
+        assertThat(wheel.advance(start + 3000)).isEqualTo(1);
+        assertThat(expired).containsExactly("a");
+    }
+
+    @Test
+    void waitsForTheDeadlineTickToPass() {
+        wheel.schedule(start + 2100, () -> expired.add("a"));
+
+        // Inside the deadline's tick: a later deadline in the same tick could not be told apart yet
+        assertThat(wheel.advance(start + 2500)).isZero();
+        assertThat(wheel.advance(start + 3000)).isEqualTo(1);
+        assertThat(expired).containsExactly("a");
+    }
+
+    @Test
+    void expiresEveryDueEntryInASlot() {
+        wheel.schedule(start + 2100, () -> expired.add("early"));
+        wheel.schedule(start + 2900, () -> expired.add("late"));
+
+        assertThat(wheel.advance(start + 3000)).isEqualTo(2);
+        assertThat(expired).containsExactlyInAnyOrder("early", "late");
+    }
+
+    @Test
+    void keepsEntriesMoreThanOneRotationAhead() {
+        // Eight slots of one second: this deadline shares a slot with start + 2500
+        wheel.schedule(start + 10_500, () -> expired.add("far"));
+
+        assertThat(wheel.advance(start + 3000)).isZero();
+        assertThat(wheel.advance(start + 8000)).isZero();
+        assertThat(wheel.advance(start + 11_000)).isEqualTo(1);
+        assertThat(expired).containsExactly("far");
+    }
+
+    @Test
+    void catchesUpAfterAMissedRotation() {
+        wheel.schedule(start + 1500, () -> expired.add("a"));
+        wheel.schedule(start + 4500, () -> expired.add("b"));
+
+        assertThat(wheel.advance(start + 20_000)).isEqualTo(2);
+        assertThat(expired).containsExactlyInAnyOrder("a", "b");
+    }
+
+    @Test
+    void expiresEachEntryOnlyOnce() {
+        wheel.schedule(start + 1500, () -> expired.add("a"));
+
+        wheel.advance(start + 2000);
+        wheel.advance(start + 3000);
+        wheel.advance(start + 10_000);
+
+        assertThat(expired).containsExactly("a");
+    }
+}
@@ -0,0 +1,76 @@
+package org.zemo.omninet.storage.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StorageServiceTokenTest {
+
+    private static final String FOLDER = "users/a@x.com/docs/";
+
+    @Test
+    void missingTokenStartsFromTheBeginning() {
+        assertThat(StorageService.decodeToken(null, FOLDER)).isNull();
+        assertThat(StorageService.decodeToken("", FOLDER)).isNull();
+    }
+
+    @Test
+    void acceptsKeysUnderTheFolder() {
+        String token = encode("k:" + FOLDER + "report.pdf");
+
+        assertThat(StorageService.decodeToken(token, FOLDER)).isEqualTo("k:" + FOLDER + "report.pdf");
+    }
+
+    @Test
+    void rejectsKeysOutsideTheFolder() {
+        assertInvalid(encode("k:users/b@x.com/docs/report.pdf"));
+        assertInvalid(encode("k:users/a@x.com/"));
+    }
+
+    @Test
+    void acceptsOffsets() {
+        assertThat(StorageService.decodeToken(encode("o:0"), FOLDER)).isEqualTo("o:0");
+        assertThat(StorageService.decodeToken(encode("o:250"), FOLDER)).isEqualTo("o:250");
+        assertThat(StorageService.decodeToken(encode("o:" + Integer.MAX_VALUE), FOLDER))
+                .isEqualTo("o:" + Integer.MAX_VALUE);
+    }
+
+    @Test
+    void rejectsMalformedOffsets() {
+        assertInvalid(encode("o:"));
+        assertInvalid(encode("o:-1"));
+        assertInvalid(encode("o:12a"));
+        assertInvalid(encode("o:" + (Integer.MAX_VALUE + 1L)));
+        assertInvalid(encode("o:99999999999999999999"));
+    }
+
+    @Test
+    void rejectsUnknownPrefixesAndBadEncoding() {
+        assertInvalid(encode("x:" + FOLDER));
+        assertInvalid(encode(FOLDER));
+        assertInvalid("not base64!");
+    }
+
+    @Test
+    void roundTripsTheTokensTheServiceIssues() {
+        // Next-page tokens are URL-safe base64 without padding, so they survive a query string as-is
+        String token = encode("k:" + FOLDER + "a b+c/?.txt");
+
+        assertThat(token).doesNotContain("=", "+", "/");
+        assertThat(StorageService.decodeToken(token, FOLDER)).isEqualTo("k:" + FOLDER + "a b+c/?.txt");
+    }
+
+    private static void assertInvalid(String token) {
+        assertThatThrownBy(() -> StorageService.decodeToken(token, FOLDER))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid continuation token");
+    }
+
+    private static String encode(String token) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token.getBytes(StandardCharsets.UTF_8));
+    }
+}